@@ -0,0 +1,97 @@
+package com.pn.android.sdk.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Call;
+
+/**
+ * 未结束的请求按 tag 和分组建立的索引
+ * <p>按 tag 或分组取消时只访问相关的请求，不需要遍历调度器中的全部请求。</p>
+ */
+final class CallIndex {
+    private final Map<Call, Entry> mCalls = new HashMap<>();
+    private final Map<Object, Set<Call>> mByTag = new HashMap<>();
+    private final Map<Object, Set<Call>> mByGroup = new HashMap<>();
+
+    /**
+     * @param tag   请求的 tag，可以为 null
+     * @param group 请求所属的分组，可以为 null
+     */
+    synchronized void add(Call call, Object tag, Object group) {
+        mCalls.put(call, new Entry(tag, group));
+        if (tag != null) {
+            add(mByTag, tag, call);
+        }
+        if (group != null) {
+            add(mByGroup, group, call);
+        }
+    }
+
+    synchronized void remove(Call call) {
+        Entry entry = mCalls.remove(call);
+        if (entry == null) {
+            return;
+        }
+        if (entry.tag != null) {
+            remove(mByTag, entry.tag, call);
+        }
+        if (entry.group != null) {
+            remove(mByGroup, entry.group, call);
+        }
+    }
+
+    synchronized List<Call> byTag(Object tag) {
+        return copy(mByTag.get(tag));
+    }
+
+    synchronized List<Call> byGroup(Object group) {
+        return copy(mByGroup.get(group));
+    }
+
+    synchronized List<Call> all() {
+        return copy(mCalls.keySet());
+    }
+
+    synchronized boolean contains(Call call) {
+        return mCalls.containsKey(call);
+    }
+
+    synchronized int size() {
+        return mCalls.size();
+    }
+
+    private static void add(Map<Object, Set<Call>> index, Object key, Call call) {
+        Set<Call> calls = index.get(key);
+        if (calls == null) {
+            calls = new LinkedHashSet<>();
+            index.put(key, calls);
+        }
+        calls.add(call);
+    }
+
+    private static void remove(Map<Object, Set<Call>> index, Object key, Call call) {
+        Set<Call> calls = index.get(key);
+        if (calls != null && calls.remove(call) && calls.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static List<Call> copy(Set<Call> calls) {
+        return calls == null ? new ArrayList<Call>() : new ArrayList<>(calls);
+    }
+
+    private static class Entry {
+        final Object tag;
+        final Object group;
+
+        Entry(Object tag, Object group) {
+            this.tag = tag;
+            this.group = group;
+        }
+    }
+}
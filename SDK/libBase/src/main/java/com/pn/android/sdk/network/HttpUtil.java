@@ -2,38 +2,118 @@ package com.pn.android.sdk.network;
 
 import com.pn.android.sdk.network.builder.GetBuilder;
 import com.pn.android.sdk.network.builder.HeadBuilder;
+import com.pn.android.sdk.network.builder.HttpRequestBuilder;
 import com.pn.android.sdk.network.builder.OtherRequestBuilder;
 import com.pn.android.sdk.network.builder.PostFileBuilder;
 import com.pn.android.sdk.network.builder.PostFormBuilder;
 import com.pn.android.sdk.network.builder.PostStringBuilder;
+import com.pn.android.sdk.network.cache.CacheInterceptor;
+import com.pn.android.sdk.network.cache.CachePolicy;
 import com.pn.android.sdk.network.callback.Callback;
+import com.pn.android.sdk.network.callback.FileCallBack;
+import com.pn.android.sdk.network.metrics.NetworkMetrics;
+import com.pn.android.sdk.network.request.BatchCall;
 import com.pn.android.sdk.network.request.RequestCall;
+import com.pn.android.sdk.network.resilience.ResilienceInterceptor;
+import com.pn.android.sdk.network.schedule.Priority;
+import com.pn.android.sdk.network.schedule.RequestScheduler;
 import com.pn.android.sdk.network.utils.Platform;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
 import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public class HttpUtil {
     public static final long DEFAULT_MILLISECONDS = 10_000L;
     private volatile static HttpUtil mInstance;
-    private OkHttpClient mOkHttpClient;
+    private volatile OkHttpClient mOkHttpClient;
     private Platform mPlatform;
+    // 自定义超时的请求共用的 client，与 mOkHttpClient 共用连接池和调度器
+    private final ConcurrentMap<String, OkHttpClient> mTimeoutClients = new ConcurrentHashMap<>();
+    // 正在执行的可合并请求，key 为方法、URL 和请求头
+    private final Map<String, Flight> mFlights = new HashMap<>();
+    // 被合并的请求 → 它等待的响应，由 mFlights 加锁
+    private final Map<Call, Flight> mCallFlights = new HashMap<>();
+    // 未结束的请求，按 tag 和分组取消时使用
+    private final CallIndex mCalls = new CallIndex();
+    // 未结束的对冲请求，key 为 {@link ResilienceInterceptor#HEADER_HEDGE} 的值
+    private final ConcurrentMap<String, RequestCall> mHedged = new ConcurrentHashMap<>();
+    // 未结束的请求，key 为 {@link ResilienceInterceptor#HEADER_CALL} 的值，合并的请求对应实际发出的请求
+    private final ConcurrentMap<String, Call> mCallIds = new ConcurrentHashMap<>();
+    private volatile boolean mCoalescing;
+    private final RequestScheduler mScheduler;
+    // client 中添加的统计，没有时为 null
+    private volatile NetworkMetrics mMetrics;
 
-    private HttpUtil() {
-        if (mOkHttpClient == null)
-            mOkHttpClient = new OkHttpClient();
+    private HttpUtil(OkHttpClient okHttpClient) {
+        if (okHttpClient == null) {
+            mOkHttpClient = withCacheInterceptor(new OkHttpClient());
+        } else {
+            mOkHttpClient = withCacheInterceptor(okHttpClient);
+        }
         mPlatform = Platform.get();
+        mScheduler = new RequestScheduler(mOkHttpClient.dispatcher().getMaxRequests());
+        mMetrics = NetworkMetrics.from(mOkHttpClient);
+    }
+
+    /**
+     * 缓存策略需要 {@link CacheInterceptor}，client 中没有时加上
+     */
+    private static OkHttpClient withCacheInterceptor(OkHttpClient okHttpClient) {
+        for (Interceptor interceptor : okHttpClient.interceptors()) {
+            if (interceptor instanceof CacheInterceptor) {
+                return okHttpClient;
+            }
+        }
+        return okHttpClient.newBuilder().addInterceptor(new CacheInterceptor(false)).build();
+    }
+
+    /**
+     * 使用自定义的 OkHttpClient，之后的请求都通过它发出
+     * <p>一般在 Application 中调用，也可以用 {@link Builder} 配置。</p>
+     */
+    public static HttpUtil initClient(OkHttpClient okHttpClient) {
+        synchronized (HttpUtil.class) {
+            if (mInstance == null) {
+                mInstance = new HttpUtil(okHttpClient);
+            } else {
+                mInstance.mOkHttpClient = withCacheInterceptor(okHttpClient);
+                mInstance.mTimeoutClients.clear();
+                mInstance.mScheduler.setMaxRunning(okHttpClient.dispatcher().getMaxRequests());
+                mInstance.mMetrics = NetworkMetrics.from(okHttpClient);
+            }
+        }
+        return mInstance;
     }
 
     public static HttpUtil getInstance() {
         if (mInstance == null) {
             synchronized (HttpUtil.class) {
                 if (mInstance == null) {
-                    mInstance = new HttpUtil();
+                    mInstance = new HttpUtil(null);
                 }
             }
         }
@@ -49,6 +129,59 @@ public class HttpUtil {
         return mOkHttpClient;
     }
 
+    /**
+     * 异步请求的调度器，可以修改各优先级的并发数
+     */
+    public RequestScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * @return 通过 {@link Builder#metrics(NetworkMetrics)} 添加的统计，没有时返回 null
+     */
+    public NetworkMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 修改该 tag 排队中的请求的优先级，已发出的请求不受影响
+     */
+    public void setPriority(Object tag, @Priority.Level int priority) {
+        mScheduler.setPriority(tag, priority);
+    }
+
+    /**
+     * 获取使用指定超时的 client，相同的超时共用一个实例，都和默认 client 共用连接池、调度器和缓存
+     *
+     * @param connTimeOut  连接超时，单位：毫秒，不大于 0 时使用默认 client 的设置
+     * @param readTimeOut  读取超时，单位：毫秒，不大于 0 时使用默认 client 的设置
+     * @param writeTimeOut 写入超时，单位：毫秒，不大于 0 时使用默认 client 的设置
+     */
+    public OkHttpClient getOkHttpClient(long connTimeOut, long readTimeOut, long writeTimeOut) {
+        OkHttpClient base = mOkHttpClient;
+        connTimeOut = connTimeOut > 0 ? connTimeOut : base.connectTimeoutMillis();
+        readTimeOut = readTimeOut > 0 ? readTimeOut : base.readTimeoutMillis();
+        writeTimeOut = writeTimeOut > 0 ? writeTimeOut : base.writeTimeoutMillis();
+        if (connTimeOut == base.connectTimeoutMillis() && readTimeOut == base.readTimeoutMillis()
+                && writeTimeOut == base.writeTimeoutMillis()) {
+            return base;
+        }
+        String key = connTimeOut + ":" + readTimeOut + ":" + writeTimeOut;
+        OkHttpClient client = mTimeoutClients.get(key);
+        if (client == null) {
+            client = base.newBuilder()
+                    .connectTimeout(connTimeOut, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeOut, TimeUnit.MILLISECONDS)
+                    .writeTimeout(writeTimeOut, TimeUnit.MILLISECONDS)
+                    .build();
+            OkHttpClient existing = mTimeoutClients.putIfAbsent(key, client);
+            if (existing != null) {
+                client = existing;
+            }
+        }
+        return client;
+    }
+
     public static GetBuilder get() {
         return new GetBuilder();
     }
@@ -81,44 +214,393 @@ public class HttpUtil {
         return new OtherRequestBuilder(METHOD.PATCH);
     }
 
+    /**
+     * 一起发出一组请求，全部结束后在主线程回调一次
+     */
+    public static BatchCall batch() {
+        return new BatchCall();
+    }
+
     public void execute(final RequestCall requestCall, Callback callback) {
         if (callback == null)
             callback = Callback.CALLBACK_DEFAULT;
         final Callback finalCallback = callback;
         final int id = requestCall.getHttpRequest().getId();
 
+        track(requestCall);
+        markQueued(requestCall);
+        mScheduler.submit(new RequestScheduler.Task(requestCall.getCall(), requestCall.getPriority()) {
+            @Override
+            protected void start() {
+                dispatch(requestCall, finalCallback, id, this);
+            }
+
+            @Override
+            protected void onCanceled() {
+                forget(requestCall.getCall());
+                sendFailResultCallback(requestCall.getCall(), new IOException("Canceled!"), finalCallback, id);
+            }
+        });
+    }
+
+    /**
+     * 经调度器发出已 {@link RequestCall#buildCall(Callback) 创建} 的请求，不合并相同的请求，
+     * 在 OkHttp 的线程中回调，排队中被取消时在取消的线程中回调
+     */
+    public void enqueue(RequestCall requestCall, final okhttp3.Callback responseCallback) {
+        final Call requestedCall = requestCall.getCall();
+        track(requestCall);
+        markQueued(requestCall);
+        mScheduler.submit(new RequestScheduler.Task(requestedCall, requestCall.getPriority()) {
+            @Override
+            protected void start() {
+                final RequestScheduler.Task task = this;
+                requestedCall.enqueue(new okhttp3.Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        mScheduler.finished(task);
+                        untrack(call);
+                        responseCallback.onFailure(call, e);
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        mScheduler.finished(task);
+                        try {
+                            responseCallback.onResponse(call, response);
+                        } finally {
+                            untrack(call);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            protected void onCanceled() {
+                forget(requestedCall);
+                responseCallback.onFailure(requestedCall, new IOException("Canceled!"));
+            }
+        });
+    }
+
+    /**
+     * 调度器分配到名额后发出请求，请求结束时释放名额
+     */
+    private void dispatch(RequestCall requestCall, final Callback callback, final int id,
+                          final RequestScheduler.Task task) {
+        if (mCoalescing && isCoalescable(requestCall, callback)) {
+            executeCoalesced(requestCall, callback, id, task);
+            return;
+        }
+
         requestCall.getCall().enqueue(new okhttp3.Callback() {
             @Override
             public void onFailure(Call call, final IOException e) {
-                sendFailResultCallback(call, e, finalCallback, id);
+                mScheduler.finished(task);
+                untrack(call);
+                sendFailResultCallback(call, e, callback, id);
             }
 
             @Override
             public void onResponse(final Call call, final Response response) {
+                mScheduler.finished(task);
+                try {
+                    deliverResponse(call, response, callback, id);
+                } finally {
+                    untrack(call);
+                    if (response.body() != null)
+                        response.body().close();
+                }
+
+            }
+        });
+    }
+
+    private void deliverResponse(Call call, Response response, Callback callback, int id) {
+        try {
+            if (call.isCanceled()) {
+                sendFailResultCallback(call, new IOException("Canceled!"), callback, id);
+                return;
+            }
+
+            if (!callback.validateReponse(response, id)) {
+                sendFailResultCallback(call, new IOException("request failed , reponse's code is : " + response.code()), callback, id);
+                return;
+            }
+
+            Object o = callback.parseResponse(response, id);
+            sendSuccessResultCallback(o, callback, id);
+        } catch (Exception e) {
+            sendFailResultCallback(call, e, callback, id);
+        }
+    }
+
+    /**
+     * GET、HEAD 请求可以合并；下载文件的请求边下载边写文件，不合并
+     */
+    private static boolean isCoalescable(RequestCall requestCall, Callback callback) {
+        String method = requestCall.getRequest().method();
+        return (METHOD.GET.equals(method) || METHOD.HEAD.equals(method))
+                && !(callback instanceof FileCallBack);
+    }
+
+    /**
+     * 相同的请求正在执行时不再发出，等待它的响应
+     * <p>发出的是第一个请求的副本，每个请求自己的 Call 只用来标记是否取消。
+     * 响应到达时只有一个请求在等待则直接交给它，否则读出全部内容，每个请求各自解析一份。</p>
+     */
+    private void executeCoalesced(RequestCall requestCall, Callback callback, int id,
+                                  final RequestScheduler.Task task) {
+        Request request = requestCall.getRequest();
+        String key = coalescingKey(request);
+        final Flight flight;
+        synchronized (mFlights) {
+            Flight existing = mFlights.get(key);
+            if (existing != null && !existing.call.isCanceled()) {
+                existing.waiters.add(new Waiter(requestCall.getCall(), callback, id));
+                mCallFlights.put(requestCall.getCall(), existing);
+                flight = null;
+            } else {
+                flight = new Flight(key, requestCall.getCall().clone());
+                flight.waiters.add(new Waiter(requestCall.getCall(), callback, id));
+                mCallFlights.put(requestCall.getCall(), flight);
+                mFlights.put(key, flight);
+            }
+        }
+        if (flight != null) {
+            // 实际发出的请求不属于任何 tag 和分组，只随 cancelAll() 或全部等待的请求取消
+            mCalls.add(flight.call, null, null);
+            String callId = request.header(ResilienceInterceptor.HEADER_CALL);
+            if (callId != null) {
+                mCallIds.put(callId, flight.call);
+            }
+        }
+        if (flight == null) {
+            // 没有发出新的请求，不占用名额
+            NetworkMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.forget(request);
+            }
+            mScheduler.finished(task);
+            return;
+        }
+        flight.call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                mScheduler.finished(task);
+                for (Waiter waiter : land(flight)) {
+                    sendFailResultCallback(waiter.call, e, waiter.callback, waiter.id);
+                }
+                untrack(flight);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                mScheduler.finished(task);
                 try {
-                    if (call.isCanceled()) {
-                        sendFailResultCallback(call, new IOException("Canceled!"), finalCallback, id);
+                    List<Waiter> waiters = land(flight);
+                    if (waiters.size() == 1) {
+                        Waiter waiter = waiters.get(0);
+                        deliverResponse(waiter.call, response, waiter.callback, waiter.id);
                         return;
                     }
-
-                    if (!finalCallback.validateReponse(response, id)) {
-                        sendFailResultCallback(call, new IOException("request failed , reponse's code is : " + response.code()), finalCallback, id);
+                    byte[] body;
+                    MediaType contentType = null;
+                    try {
+                        if (response.body() != null) {
+                            contentType = response.body().contentType();
+                            body = response.body().bytes();
+                        } else {
+                            body = null;
+                        }
+                    } catch (IOException e) {
+                        for (Waiter waiter : waiters) {
+                            sendFailResultCallback(waiter.call, e, waiter.callback, waiter.id);
+                        }
                         return;
                     }
-
-                    Object o = finalCallback.parseResponse(response, id);
-                    sendSuccessResultCallback(o, finalCallback, id);
-                } catch (Exception e) {
-                    sendFailResultCallback(call, e, finalCallback, id);
+                    for (Waiter waiter : waiters) {
+                        Response copy = body == null ? response : response.newBuilder()
+                                .body(ResponseBody.create(contentType, body))
+                                .build();
+                        deliverResponse(waiter.call, copy, waiter.callback, waiter.id);
+                    }
                 } finally {
+                    untrack(flight);
                     if (response.body() != null)
                         response.body().close();
                 }
-
             }
         });
     }
 
+    /**
+     * 方法、URL 和请求头相同的请求合并，每次请求各不相同的请求编号和对冲编号不参与比较
+     */
+    private static String coalescingKey(Request request) {
+        StringBuilder key = new StringBuilder()
+                .append(request.method()).append(' ').append(request.url()).append('\n');
+        Headers headers = request.headers();
+        for (int i = 0, size = headers.size(); i < size; i++) {
+            String name = headers.name(i);
+            if (ResilienceInterceptor.HEADER_CALL.equalsIgnoreCase(name)
+                    || ResilienceInterceptor.HEADER_HEDGE.equalsIgnoreCase(name)
+                    || ResilienceInterceptor.HEADER_HEDGE_COPY.equalsIgnoreCase(name)) {
+                continue;
+            }
+            key.append(name).append(": ").append(headers.value(i)).append('\n');
+        }
+        return key.toString();
+    }
+
+    /**
+     * 响应已到达，之后相同的请求重新发出
+     *
+     * @return 等待该响应的请求，已取消的请求收到取消的回调，不在其中
+     */
+    private List<Waiter> land(Flight flight) {
+        synchronized (mFlights) {
+            if (mFlights.get(flight.key) == flight) {
+                mFlights.remove(flight.key);
+            }
+            for (Waiter waiter : flight.waiters) {
+                mCallFlights.remove(waiter.call);
+            }
+        }
+        List<Waiter> waiters = new ArrayList<>();
+        for (Waiter waiter : flight.waiters) {
+            if (waiter.call.isCanceled() || flight.call.isCanceled()) {
+                sendFailResultCallback(waiter.call, new IOException("Canceled!"), waiter.callback, waiter.id);
+            } else {
+                waiters.add(waiter);
+            }
+        }
+        return waiters;
+    }
+
+    /**
+     * 取消一个请求，被合并的请求只标记自己已取消，等待同一个响应的请求都已取消时才取消实际发出的请求
+     */
+    public void cancel(Call call) {
+        call.cancel();
+        if (mScheduler.remove(call)) {
+            return;
+        }
+        synchronized (mFlights) {
+            Flight flight = mCallFlights.get(call);
+            if (flight != null) {
+                cancelIfAbandoned(flight);
+            }
+        }
+    }
+
+    /**
+     * 记录未结束的请求，发出请求时调用，请求结束时 {@link #untrack(Call)}；
+     * 只 {@link RequestCall#buildCall(Callback) 创建} 而自行发出的请求不记录
+     */
+    public void track(RequestCall requestCall) {
+        mCalls.add(requestCall.getCall(), requestCall.getHttpRequest().getTag(), requestCall.getGroup());
+        Request request = requestCall.getRequest();
+        String callId = request.header(ResilienceInterceptor.HEADER_CALL);
+        if (callId != null) {
+            mCallIds.put(callId, requestCall.getCall());
+        }
+        String hedgeId = request.header(ResilienceInterceptor.HEADER_HEDGE);
+        if (hedgeId != null) {
+            mHedged.put(hedgeId, requestCall);
+        }
+    }
+
+    public void untrack(Call call) {
+        mCalls.remove(call);
+        Request request = call.request();
+        String callId = request.header(ResilienceInterceptor.HEADER_CALL);
+        if (callId != null) {
+            mCallIds.remove(callId, call);
+        }
+        String hedgeId = request.header(ResilienceInterceptor.HEADER_HEDGE);
+        if (hedgeId != null) {
+            mHedged.remove(hedgeId);
+        }
+    }
+
+    /**
+     * 请求是否已取消，用于重试前判断失败是否由取消引起
+     *
+     * @param callId 请求的 {@link ResilienceInterceptor#HEADER_CALL}
+     * @return 没有记录的请求返回 false
+     */
+    public boolean isCanceled(String callId) {
+        Call call = mCallIds.get(callId);
+        return call != null && call.isCanceled();
+    }
+
+    /**
+     * 创建对冲请求的副本：由原请求的 client 发出，记在原请求的 tag 和分组下，结束时 {@link #untrack(Call)}
+     * <p>原请求没有经 HttpUtil 发出时使用默认 client，不记录。</p>
+     *
+     * @param hedgeId 原请求的 {@link ResilienceInterceptor#HEADER_HEDGE}
+     */
+    public Call newHedgeCall(String hedgeId, Request copy) {
+        RequestCall origin = mHedged.get(hedgeId);
+        if (origin == null) {
+            return mOkHttpClient.newCall(copy);
+        }
+        Call call = origin.getClient().newCall(copy);
+        mCalls.add(call, origin.getHttpRequest().getTag(), origin.getGroup());
+        return call;
+    }
+
+    private void markQueued(RequestCall requestCall) {
+        NetworkMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.markQueued(requestCall.getRequest());
+        }
+    }
+
+    /**
+     * 排队中被取消，没有执行
+     */
+    private void forget(Call call) {
+        NetworkMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.forget(call.request());
+        }
+        untrack(call);
+    }
+
+    private void untrack(Flight flight) {
+        untrack(flight.call);
+        for (Waiter waiter : flight.waiters) {
+            untrack(waiter.call);
+        }
+    }
+
+    /**
+     * 等待的请求都已取消时取消实际发出的请求，之后相同的请求不再等待它；由 mFlights 加锁
+     */
+    private void cancelIfAbandoned(Flight flight) {
+        for (Waiter waiter : flight.waiters) {
+            if (!waiter.call.isCanceled()) {
+                return;
+            }
+        }
+        flight.call.cancel();
+        if (mFlights.get(flight.key) == flight) {
+            mFlights.remove(flight.key);
+        }
+    }
+
+    /**
+     * 相同的 GET、HEAD 请求（URL 和请求头都相同）正在执行时，之后的请求等待同一个响应
+     * <p>多个请求等待同一个响应时内容会全部读入内存，{@link FileCallBack} 的请求不合并。</p>
+     *
+     * @param coalescing 是否合并，默认关闭
+     */
+    public void setCoalescing(boolean coalescing) {
+        mCoalescing = coalescing;
+    }
+
 
     public void sendFailResultCallback(final Call call, final Exception e, final Callback callback, final int id) {
         if (callback == null) return;
@@ -143,20 +625,265 @@ public class HttpUtil {
         });
     }
 
+    /**
+     * 取消该 tag 的请求，耗时与该 tag 的请求数成正比
+     * <p>直接通过 {@link #getOkHttpClient()} 发出的请求没有记录，该 tag 没有记录的请求时
+     * 再查找 OkHttp 调度器中 {@link Request#tag()} 相同的请求。</p>
+     */
     public void cancelTag(Object tag) {
-        for (Call call : mOkHttpClient.dispatcher().queuedCalls()) {
-            if (tag.equals(call.request().tag())) {
+        // 排队中的请求直接移除，不会再发出
+        mScheduler.removeTag(tag);
+        List<Call> calls = mCalls.byTag(tag);
+        if (calls.isEmpty()) {
+            cancelUntracked(tag);
+        } else {
+            cancelAll(calls);
+        }
+    }
+
+    /**
+     * 取消调度器中没有记录的请求，合并后实际发出的请求已有记录，不在其中
+     */
+    private void cancelUntracked(Object tag) {
+        Dispatcher dispatcher = mOkHttpClient.dispatcher();
+        List<Call> calls = new ArrayList<>(dispatcher.queuedCalls());
+        calls.addAll(dispatcher.runningCalls());
+        for (Call call : calls) {
+            if (tag.equals(call.request().tag()) && !mCalls.contains(call)) {
                 call.cancel();
             }
         }
-        for (Call call : mOkHttpClient.dispatcher().runningCalls()) {
-            if (tag.equals(call.request().tag())) {
-                call.cancel();
+    }
+
+    /**
+     * 取消该分组的请求，分组通过 {@link HttpRequestBuilder#group(Object)} 指定
+     */
+    public void cancelGroup(Object group) {
+        cancelAll(mCalls.byGroup(group));
+    }
+
+    /**
+     * 取消所有未结束的请求
+     */
+    public void cancelAll() {
+        cancelAll(mCalls.all());
+    }
+
+    private void cancelAll(List<Call> calls) {
+        // 合并的请求按各自的 tag 取消，实际发出的请求在都取消后才取消
+        for (Call call : calls) {
+            cancel(call);
+        }
+    }
+
+    private static class Flight {
+        final String key;
+        // 实际发出的请求
+        final Call call;
+        final List<Waiter> waiters = new ArrayList<>();
+
+        Flight(String key, Call call) {
+            this.key = key;
+            this.call = call;
+        }
+    }
+
+    private static class Waiter {
+        final Call call;
+        final Callback callback;
+        final int id;
+
+        Waiter(Call call, Callback callback, int id) {
+            this.call = call;
+            this.callback = callback;
+            this.id = id;
+        }
+    }
+
+    /**
+     * 配置 HttpUtil 使用的 OkHttpClient，{@link #build()} 之后生效
+     */
+    public static class Builder {
+        private final OkHttpClient.Builder clientBuilder;
+        // 基础 client 的 dispatcher，没有基础 client 时为 null
+        private final Dispatcher dispatcher;
+        // 0 表示不修改
+        private int maxRequests;
+        private int maxRequestsPerHost;
+        private boolean fallbackToCache;
+        private ResilienceInterceptor resilience;
+        private NetworkMetrics metrics;
+
+        public Builder() {
+            clientBuilder = new OkHttpClient.Builder();
+            dispatcher = null;
+        }
+
+        /**
+         * 在已有的 client 的配置上修改，沿用它的 dispatcher 和线程池，只调整并发数
+         */
+        public Builder(OkHttpClient base) {
+            clientBuilder = base.newBuilder();
+            dispatcher = base.dispatcher();
+        }
+
+        /**
+         * @param maxRequests 同时执行的最大请求数，默认 64
+         */
+        public Builder maxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * 同一个域名同时执行的最大请求数，默认 5，超出的请求排队等待
+         * <p>使用 HTTP/2 时同一个域名的请求在一个连接上多路复用，可以调大该值。</p>
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param maxIdleConnections 最多保留的空闲连接数，默认 5
+         * @param keepAliveDuration  空闲连接保留的时间，默认 5 分钟
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAliveDuration, TimeUnit timeUnit) {
+            clientBuilder.connectionPool(new ConnectionPool(maxIdleConnections, keepAliveDuration, timeUnit));
+            return this;
+        }
+
+        /**
+         * @param http2 是否在服务端支持时使用 HTTP/2，默认开启；关闭时只使用 HTTP/1.1
+         */
+        public Builder http2(boolean http2) {
+            List<Protocol> protocols = http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                    : Arrays.asList(Protocol.HTTP_1_1);
+            clientBuilder.protocols(new ArrayList<>(protocols));
+            return this;
+        }
+
+        /**
+         * 所有请求共用的 HTTP 响应缓存，按响应头缓存 GET 请求的响应并向服务端验证
+         * <p>单个请求可以通过 {@link HttpRequestBuilder#cachePolicy(int)} 指定缓存策略。</p>
+         *
+         * @param directory 缓存目录，同一个目录只能由一个缓存使用
+         * @param maxSize   最大字节数
+         */
+        public Builder cache(File directory, long maxSize) {
+            clientBuilder.cache(new Cache(directory, maxSize));
+            return this;
+        }
+
+        /**
+         * @param fallbackToCache 所有 GET 请求在网络失败时都使用缓存中的响应，过期的也使用，
+         *                        相当于都指定了 {@link CachePolicy#NETWORK_ELSE_CACHE}
+         */
+        public Builder fallbackToCache(boolean fallbackToCache) {
+            this.fallbackToCache = fallbackToCache;
+            return this;
+        }
+
+        /**
+         * 失败重试、对冲请求和熔断，在缓存降级之前生效：重试都失败后才使用缓存中的响应
+         */
+        public Builder resilience(ResilienceInterceptor resilience) {
+            this.resilience = resilience;
+            return this;
+        }
+
+        /**
+         * 按接口统计耗时、流量和状态码，通过 {@link HttpUtil#getMetrics()} 读取
+         */
+        public Builder metrics(NetworkMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            clientBuilder.connectTimeout(timeout, unit);
+            return this;
+        }
+
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            clientBuilder.readTimeout(timeout, unit);
+            return this;
+        }
+
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            clientBuilder.writeTimeout(timeout, unit);
+            return this;
+        }
+
+        public Builder cookieJar(CookieJar cookieJar) {
+            clientBuilder.cookieJar(cookieJar);
+            return this;
+        }
+
+        public Builder addInterceptor(Interceptor interceptor) {
+            clientBuilder.addInterceptor(interceptor);
+            return this;
+        }
+
+        public Builder addNetworkInterceptor(Interceptor interceptor) {
+            clientBuilder.addNetworkInterceptor(interceptor);
+            return this;
+        }
+
+        /**
+         * 创建 client 并替换 HttpUtil 当前使用的 client
+         */
+        public HttpUtil build() {
+            Dispatcher dispatcher = this.dispatcher != null ? this.dispatcher : new Dispatcher();
+            if (maxRequests > 0) {
+                dispatcher.setMaxRequests(maxRequests);
+            }
+            if (maxRequestsPerHost > 0) {
+                dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+            }
+            clientBuilder.dispatcher(dispatcher);
+            // 替换基础 client 中已有的，只保留一个
+            Iterator<Interceptor> interceptors = clientBuilder.interceptors().iterator();
+            ResilienceInterceptor resilience = this.resilience;
+            while (interceptors.hasNext()) {
+                Interceptor interceptor = interceptors.next();
+                if (interceptor instanceof CacheInterceptor) {
+                    interceptors.remove();
+                } else if (interceptor instanceof ResilienceInterceptor) {
+                    if (resilience == null) {
+                        resilience = (ResilienceInterceptor) interceptor;
+                    }
+                    interceptors.remove();
+                }
+            }
+            clientBuilder.addInterceptor(new CacheInterceptor(fallbackToCache));
+            if (resilience != null) {
+                clientBuilder.addInterceptor(resilience);
+            }
+            if (metrics != null) {
+                removeMetrics(clientBuilder.interceptors());
+                removeMetrics(clientBuilder.networkInterceptors());
+                // 放在最前面，包括排队、重试和缓存在内的全部耗时
+                clientBuilder.interceptors().add(0, metrics.interceptor());
+                // 放在最后面，每次尝试开始的时间
+                clientBuilder.addInterceptor(metrics.attemptInterceptor());
+                clientBuilder.addNetworkInterceptor(metrics.networkInterceptor());
+            }
+            return initClient(clientBuilder.build());
+        }
+
+        private static void removeMetrics(List<Interceptor> interceptors) {
+            Iterator<Interceptor> iterator = interceptors.iterator();
+            while (iterator.hasNext()) {
+                if (NetworkMetrics.isMetricsInterceptor(iterator.next())) {
+                    iterator.remove();
+                }
             }
         }
     }
 
     public static class METHOD {
+        public static final String GET = "GET";
         public static final String HEAD = "HEAD";
         public static final String DELETE = "DELETE";
         public static final String PUT = "PUT";
@@ -17,7 +17,7 @@ public class GetBuilder extends HttpRequestBuilder<GetBuilder> implements HasPar
             url = appendParams(url, params);
         }
 
-        return new GetRequest(url, tag, params, headers, id).build();
+        return applyOptions(new GetRequest(url, tag, params, headers, id).build());
     }
 
     protected String appendParams(String url, Map<String, String> params) {
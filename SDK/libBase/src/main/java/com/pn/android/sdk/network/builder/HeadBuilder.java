@@ -7,6 +7,6 @@ import com.pn.android.sdk.network.request.RequestCall;
 public class HeadBuilder extends GetBuilder {
     @Override
     public RequestCall build() {
-        return new OtherRequest(null, null, HttpUtil.METHOD.HEAD, url, tag, params, headers, id).build();
+        return applyOptions(new OtherRequest(null, null, HttpUtil.METHOD.HEAD, url, tag, params, headers, id).build());
     }
 }
@@ -1,6 +1,8 @@
 package com.pn.android.sdk.network.builder;
 
+import com.pn.android.sdk.network.cache.CachePolicy;
 import com.pn.android.sdk.network.request.RequestCall;
+import com.pn.android.sdk.network.schedule.Priority;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -11,6 +13,10 @@ public abstract class HttpRequestBuilder<T extends HttpRequestBuilder> {
     protected Map<String, String> headers;
     protected Map<String, String> params;
     protected int id;
+    protected int cachePolicy = CachePolicy.DEFAULT;
+    protected int priority = Priority.NORMAL;
+    protected Object group;
+    protected boolean hedged;
 
     public T id(int id) {
         this.id = id;
@@ -41,5 +47,45 @@ public abstract class HttpRequestBuilder<T extends HttpRequestBuilder> {
         return (T) this;
     }
 
+    /**
+     * 指定该请求的缓存策略，默认 {@link CachePolicy#DEFAULT}
+     */
+    public T cachePolicy(@CachePolicy.Policy int cachePolicy) {
+        this.cachePolicy = cachePolicy;
+        return (T) this;
+    }
+
+    /**
+     * 指定异步请求的优先级，默认 {@link Priority#NORMAL}，高优先级的请求先发出
+     */
+    public T priority(@Priority.Level int priority) {
+        this.priority = priority;
+        return (T) this;
+    }
+
+    /**
+     * 指定请求所属的分组，可以通过 {@link com.pn.android.sdk.network.HttpUtil#cancelGroup(Object)} 一起取消
+     * <p>例如 tag 区分请求的用途，分组为发起请求的页面。</p>
+     */
+    public T group(Object group) {
+        this.group = group;
+        return (T) this;
+    }
+
+    /**
+     * 延迟敏感的 GET、HEAD 请求，超时未响应时再发出一个相同的请求，使用先返回的响应
+     */
+    public T hedged(boolean hedged) {
+        this.hedged = hedged;
+        return (T) this;
+    }
+
     public abstract RequestCall build();
+
+    /**
+     * 把缓存策略、优先级等选项设置到创建的请求上
+     */
+    protected RequestCall applyOptions(RequestCall call) {
+        return call.cachePolicy(cachePolicy).priority(priority).group(group).hedged(hedged);
+    }
 }
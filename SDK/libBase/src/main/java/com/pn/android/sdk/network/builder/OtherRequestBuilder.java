@@ -19,7 +19,7 @@ public class OtherRequestBuilder extends HttpRequestBuilder<OtherRequestBuilder>
 
     @Override
     public RequestCall build() {
-        return new OtherRequest(requestBody, content, method, url, tag, params, headers, id).build();
+        return applyOptions(new OtherRequest(requestBody, content, method, url, tag, params, headers, id).build());
     }
 
     public OtherRequestBuilder requestBody(RequestBody requestBody) {
@@ -24,7 +24,7 @@ public class PostFileBuilder extends HttpRequestBuilder<PostFileBuilder> {
 
     @Override
     public RequestCall build() {
-        return new PostFileRequest(url, tag, params, headers, file, mediaType, id).build();
+        return applyOptions(new PostFileRequest(url, tag, params, headers, file, mediaType, id).build());
     }
 
 
@@ -14,7 +14,7 @@ public class PostFormBuilder extends HttpRequestBuilder<PostFormBuilder> impleme
 
     @Override
     public RequestCall build() {
-        return new PostFormRequest(url, tag, params, headers, files, id).build();
+        return applyOptions(new PostFormRequest(url, tag, params, headers, files, id).build());
     }
 
     public PostFormBuilder files(String key, Map<String, File> files) {
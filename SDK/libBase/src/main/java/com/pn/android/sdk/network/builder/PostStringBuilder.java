@@ -22,7 +22,7 @@ public class PostStringBuilder extends HttpRequestBuilder<PostStringBuilder> {
 
     @Override
     public RequestCall build() {
-        return new PostStringRequest(url, tag, params, headers, content, mediaType, id).build();
+        return applyOptions(new PostStringRequest(url, tag, params, headers, content, mediaType, id).build());
     }
 
 
@@ -0,0 +1,47 @@
+package com.pn.android.sdk.network.cache;
+
+import java.io.IOException;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 网络失败时改用缓存中的响应，过期的也使用
+ * <p>对 {@link CachePolicy#NETWORK_ELSE_CACHE} 的请求生效；开启 fallbackByDefault 时对所有 GET 请求生效。</p>
+ */
+public class CacheInterceptor implements Interceptor {
+
+    private final boolean fallbackByDefault;
+
+    public CacheInterceptor(boolean fallbackByDefault) {
+        this.fallbackByDefault = fallbackByDefault;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean fallback = fallbackByDefault && "GET".equals(request.method());
+        if (request.header(CachePolicy.HEADER_FALLBACK) != null) {
+            fallback = true;
+            request = request.newBuilder().removeHeader(CachePolicy.HEADER_FALLBACK).build();
+        }
+        if (!fallback) {
+            return chain.proceed(request);
+        }
+        try {
+            return chain.proceed(request);
+        } catch (IOException e) {
+            Response cached = chain.proceed(request.newBuilder()
+                    .cacheControl(CacheControl.FORCE_CACHE)
+                    .build());
+            // 504 表示没有可用的缓存
+            if (cached.code() == 504) {
+                cached.close();
+                throw e;
+            }
+            return cached;
+        }
+    }
+}
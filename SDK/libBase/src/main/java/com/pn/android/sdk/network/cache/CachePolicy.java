@@ -0,0 +1,74 @@
+package com.pn.android.sdk.network.cache;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Request;
+
+/**
+ * 单个请求的缓存策略，需要先通过 {@link com.pn.android.sdk.network.HttpUtil.Builder#cache} 开启响应缓存
+ * <p>只有 GET 请求的响应会被缓存。</p>
+ */
+public final class CachePolicy {
+
+    /**
+     * 按响应头中的 Cache-Control、ETag、Last-Modified 处理：未过期时直接使用缓存，
+     * 过期后带上 If-None-Match / If-Modified-Since 向服务端验证，304 时使用缓存
+     */
+    public static final int DEFAULT = 0;
+    /**
+     * 不使用缓存，总是向服务端请求，响应仍然写入缓存
+     */
+    public static final int NETWORK_ONLY = 1;
+    /**
+     * 只使用缓存，过期的也使用，没有缓存时返回 504
+     */
+    public static final int CACHE_ONLY = 2;
+    /**
+     * 有缓存时直接使用，过期的也使用，没有缓存时请求服务端
+     */
+    public static final int CACHE_ELSE_NETWORK = 3;
+    /**
+     * 按 {@link #DEFAULT} 请求，网络失败时使用缓存，过期的也使用
+     */
+    public static final int NETWORK_ELSE_CACHE = 4;
+
+    @IntDef({DEFAULT, NETWORK_ONLY, CACHE_ONLY, CACHE_ELSE_NETWORK, NETWORK_ELSE_CACHE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Policy {
+    }
+
+    /**
+     * 标记网络失败时使用缓存的请求头，由 {@link CacheInterceptor} 移除，不会发给服务端
+     */
+    static final String HEADER_FALLBACK = "PN-Cache-Fallback";
+
+    private static final CacheControl MAX_STALE = new CacheControl.Builder()
+            .maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS)
+            .build();
+
+    private CachePolicy() {
+    }
+
+    /**
+     * @return 按策略设置缓存相关请求头之后的请求
+     */
+    public static Request apply(Request request, @Policy int policy) {
+        switch (policy) {
+            case NETWORK_ONLY:
+                return request.newBuilder().cacheControl(CacheControl.FORCE_NETWORK).build();
+            case CACHE_ONLY:
+                return request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+            case CACHE_ELSE_NETWORK:
+                return request.newBuilder().cacheControl(MAX_STALE).build();
+            case NETWORK_ELSE_CACHE:
+                return request.newBuilder().header(HEADER_FALLBACK, "1").build();
+            default:
+                return request;
+        }
+    }
+}
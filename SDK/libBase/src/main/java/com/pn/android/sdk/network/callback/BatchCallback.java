@@ -0,0 +1,37 @@
+package com.pn.android.sdk.network.callback;
+
+import com.pn.android.sdk.network.request.RequestCall;
+
+import java.util.List;
+
+/**
+ * 一组请求全部结束后的回调
+ */
+public abstract class BatchCallback {
+
+    /**
+     * UI Thread，所有请求结束（或整组超时、取消）后回调一次，各请求自己的回调在此之前的同一个消息中执行
+     *
+     * @param results 与添加请求的顺序相同
+     */
+    public abstract void onComplete(List<Result> results);
+
+    public static class Result {
+        public final RequestCall call;
+        /**
+         * 请求的回调 parseResponse 的返回值，没有指定回调时为响应内容的字符串
+         */
+        public final Object response;
+        public final Exception error;
+
+        public Result(RequestCall call, Object response, Exception error) {
+            this.call = call;
+            this.response = response;
+            this.error = error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+}
@@ -30,6 +30,20 @@ public abstract class Callback<T> {
 
     }
 
+    /**
+     * 两次 onProgress 之间的最小间隔（毫秒），最后一次不受限制
+     */
+    public long progressInterval() {
+        return ProgressReporter.DEFAULT_INTERVAL;
+    }
+
+    /**
+     * 两次 onProgress 之间进度的最小增量（0-1），最后一次不受限制
+     */
+    public float progressStep() {
+        return ProgressReporter.DEFAULT_STEP;
+    }
+
     /**
      * if you parse reponse code in parseResponse, you should make this method return true.
      *
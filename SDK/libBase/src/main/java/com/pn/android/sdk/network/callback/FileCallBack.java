@@ -1,7 +1,5 @@
 package com.pn.android.sdk.network.callback;
 
-import com.pn.android.sdk.network.HttpUtil;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -32,7 +30,7 @@ public abstract class FileCallBack extends Callback<File> {
     }
 
 
-    public File saveFile(Response response, final int id) throws IOException {
+    public File saveFile(Response response, int id) throws IOException {
         InputStream is = null;
         byte[] buf = new byte[2048];
         int len = 0;
@@ -49,18 +47,14 @@ public abstract class FileCallBack extends Callback<File> {
             }
             File file = new File(dir, destFileName);
             fos = new FileOutputStream(file);
+            ProgressReporter reporter = new ProgressReporter(this, id);
             while ((len = is.read(buf)) != -1) {
                 sum += len;
                 fos.write(buf, 0, len);
-                final long finalSum = sum;
-                HttpUtil.getInstance().getDelivery().execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        onProgress(finalSum * 1.0f / total, total, id);
-                    }
-                });
+                reporter.update(sum, total);
             }
             fos.flush();
+            reporter.finish();
 
             return file;
 
@@ -1,11 +1,18 @@
 package com.pn.android.sdk.network.callback;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import okhttp3.Response;
 
 public abstract class GenericsCallback<T> extends Callback<T> {
+    // 回调类 → 泛型参数，每个回调类只解析一次
+    private static final ConcurrentMap<Class<?>, Type> TYPE_ARGUMENTS = new ConcurrentHashMap<>();
+
     IGenericsSerializator mGenericsSerializator;
 
     public GenericsCallback(IGenericsSerializator serializator) {
@@ -14,13 +21,50 @@ public abstract class GenericsCallback<T> extends Callback<T> {
 
     @Override
     public T parseResponse(Response response, int id) throws IOException {
+        Type entityType = typeArgument(getClass(), GenericsCallback.class);
+        if (entityType == String.class) {
+            return (T) response.body().string();
+        }
+        if (mGenericsSerializator instanceof IStreamingSerializator) {
+            Reader reader = response.body().charStream();
+            try {
+                return ((IStreamingSerializator) mGenericsSerializator).transform(reader, entityType);
+            } finally {
+                reader.close();
+            }
+        }
         String string = response.body().string();
-        Class<T> entityClass = (Class<T>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
-        if (entityClass == String.class) {
-            return (T) string;
+        return mGenericsSerializator.transform(string, (Class<T>) rawType(entityType));
+    }
+
+    /**
+     * 回调类在 base 处声明的泛型参数，结果按回调类缓存
+     */
+    static Type typeArgument(Class<?> callbackClass, Class<?> base) {
+        Type type = TYPE_ARGUMENTS.get(callbackClass);
+        if (type == null) {
+            Class<?> c = callbackClass;
+            while (c.getSuperclass() != base) {
+                c = c.getSuperclass();
+            }
+            Type superclass = c.getGenericSuperclass();
+            if (!(superclass instanceof ParameterizedType)) {
+                throw new IllegalStateException("missing type argument of " + callbackClass);
+            }
+            type = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+            TYPE_ARGUMENTS.put(callbackClass, type);
+        }
+        return type;
+    }
+
+    static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
         }
-        T bean = mGenericsSerializator.transform(string, entityClass);
-        return bean;
+        return Object.class;
     }
 
 }
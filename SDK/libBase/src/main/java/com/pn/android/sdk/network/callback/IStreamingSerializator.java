@@ -0,0 +1,35 @@
+package com.pn.android.sdk.network.callback;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+
+/**
+ * 边读边解析的序列化器，不需要先把整个响应读成 String
+ * <p>例如用 Gson 实现：{@code gson.fromJson(new JsonReader(reader), type)}。</p>
+ */
+public interface IStreamingSerializator extends IGenericsSerializator {
+
+    /**
+     * @param reader  响应内容，由调用方关闭
+     * @param typeOfT 目标类型，可以是 {@code List<Bean>} 这样的泛型类型
+     */
+    <T> T transform(Reader reader, Type typeOfT) throws IOException;
+
+    /**
+     * 逐个解析顶层数组中的元素，每解析出一个就回调一次
+     *
+     * @param reader      响应内容，由调用方关闭
+     * @param classOfItem 元素的类型
+     */
+    <T> void transformArray(Reader reader, Class<T> classOfItem, ItemListener<T> listener) throws IOException;
+
+    interface ItemListener<T> {
+        /**
+         * Thread Pool Thread
+         *
+         * @param index 元素在数组中的位置
+         */
+        void onItem(T item, int index);
+    }
+}
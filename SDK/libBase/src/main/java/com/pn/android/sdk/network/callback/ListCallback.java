@@ -0,0 +1,49 @@
+package com.pn.android.sdk.network.callback;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Response;
+
+/**
+ * 响应为 JSON 数组时边下载边解析，每解析出一个元素回调 {@link #onItem(Object, int, int)}
+ *
+ * @param <E> 数组元素的类型
+ */
+public abstract class ListCallback<E> extends Callback<List<E>> {
+    private final IStreamingSerializator mSerializator;
+
+    public ListCallback(IStreamingSerializator serializator) {
+        mSerializator = serializator;
+    }
+
+    @Override
+    public List<E> parseResponse(Response response, final int id) throws IOException {
+        Class<E> itemClass = (Class<E>) GenericsCallback.rawType(
+                GenericsCallback.typeArgument(getClass(), ListCallback.class));
+        final List<E> items = new ArrayList<>();
+        Reader reader = response.body().charStream();
+        try {
+            mSerializator.transformArray(reader, itemClass, new IStreamingSerializator.ItemListener<E>() {
+                @Override
+                public void onItem(E item, int index) {
+                    ListCallback.this.onItem(item, index, id);
+                    items.add(item);
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        return items;
+    }
+
+    /**
+     * Thread Pool Thread，需要更新界面时自行切换线程
+     *
+     * @param index 元素在数组中的位置
+     */
+    public void onItem(E item, int index, int id) {
+    }
+}
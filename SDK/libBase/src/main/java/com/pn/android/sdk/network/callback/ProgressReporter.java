@@ -0,0 +1,101 @@
+package com.pn.android.sdk.network.callback;
+
+import com.pn.android.sdk.network.HttpUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 限流后把进度交给 {@link Callback#onProgress(float, long, int)}
+ * <p>距上次回调不足 {@link Callback#progressInterval()} 或进度增量不足 {@link Callback#progressStep()} 时不回调，
+ * 总字节数未知时进度始终为 0，只按时间间隔限流；
+ * 主线程队列中最多只有一个待执行的进度，执行时取最新的值。最后一次（100%）总会回调。</p>
+ * <p>{@link #update(long, long)} 和 {@link #finish()} 需要在同一个线程调用。</p>
+ */
+public final class ProgressReporter {
+    /**
+     * 默认的最小回调间隔（毫秒）
+     */
+    public static final long DEFAULT_INTERVAL = 100;
+    /**
+     * 默认的最小进度增量
+     */
+    public static final float DEFAULT_STEP = 0.01f;
+
+    private final Callback callback;
+    private final int id;
+    private final long intervalNanos;
+    private final float step;
+
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile long current;
+    private volatile long total;
+
+    private long lastNanos;
+    private float lastProgress = -1;
+    private boolean finished;
+
+    private final Runnable deliverTask = new Runnable() {
+        @Override
+        public void run() {
+            pending.set(false);
+            long total = ProgressReporter.this.total;
+            long current = ProgressReporter.this.current;
+            callback.onProgress(total > 0 ? current * 1.0f / total : 0, total, id);
+        }
+    };
+
+    public ProgressReporter(Callback callback, int id) {
+        this.callback = callback;
+        this.id = id;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(callback.progressInterval());
+        this.step = callback.progressStep();
+    }
+
+    /**
+     * @param total 总字节数，未知时为 -1
+     */
+    public void update(long current, long total) {
+        if (total > 0 && current >= total) {
+            deliver(current, total, true);
+            return;
+        }
+        if (finished && current < this.current) {
+            // 重试时从头开始
+            finished = false;
+            lastProgress = -1;
+        }
+        long now = System.nanoTime();
+        float progress = total > 0 ? current * 1.0f / total : 0;
+        if (lastProgress >= 0 && (now - lastNanos < intervalNanos
+                || (total > 0 && progress - lastProgress < step))) {
+            this.current = current;
+            this.total = total;
+            return;
+        }
+        lastNanos = now;
+        lastProgress = progress;
+        deliver(current, total, false);
+    }
+
+    /**
+     * 传输结束，总字节数未知时以已传输的字节数作为总数
+     */
+    public void finish() {
+        long current = this.current;
+        long total = this.total;
+        deliver(current, total > 0 ? total : current, true);
+    }
+
+    private void deliver(long current, long total, boolean last) {
+        if (finished) {
+            return;
+        }
+        finished = last;
+        this.total = total;
+        this.current = current;
+        if (pending.compareAndSet(false, true)) {
+            HttpUtil.getInstance().getDelivery().execute(deliverTask);
+        }
+    }
+}
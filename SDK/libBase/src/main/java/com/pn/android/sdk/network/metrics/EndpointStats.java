@@ -0,0 +1,125 @@
+package com.pn.android.sdk.network.metrics;
+
+import com.pn.android.sdk.utils.stats.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个接口的统计
+ */
+public final class EndpointStats {
+    // 0 为网络失败，1-5 为 1xx-5xx
+    private static final int STATUS_CLASSES = 6;
+
+    final String endpoint;
+    private final AtomicLongArray statusCounts = new AtomicLongArray(STATUS_CLASSES);
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    final LatencyHistogram queueLatency = new LatencyHistogram();
+    final LatencyHistogram connectLatency = new LatencyHistogram();
+    final LatencyHistogram ttfbLatency = new LatencyHistogram();
+    final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @param code HTTP 状态码，网络失败时为 0
+     */
+    void recordStatus(int code) {
+        int statusClass = code / 100;
+        statusCounts.incrementAndGet(statusClass > 0 && statusClass < STATUS_CLASSES ? statusClass : 0);
+    }
+
+    void recordBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    void recordBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[STATUS_CLASSES];
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            counts[i] = statusCounts.get(i);
+        }
+        return new Snapshot(endpoint, counts, bytesIn.get(), bytesOut.get(),
+                queueLatency.snapshot(), connectLatency.snapshot(),
+                ttfbLatency.snapshot(), totalLatency.snapshot());
+    }
+
+    /**
+     * 某一时刻的统计
+     */
+    public static final class Snapshot {
+        /**
+         * 方法、域名和路径，路径中的数字段替换为 {id}
+         */
+        public final String endpoint;
+        private final long[] statusCounts;
+        public final long bytesIn;
+        public final long bytesOut;
+        /**
+         * 从提交到开始执行的等待时间，包括调度器和 OkHttp 调度器中的排队
+         */
+        public final LatencyHistogram.Snapshot queueLatency;
+        /**
+         * 建立新连接的耗时，从本次尝试到达网络层算起，包括 DNS、TCP 和 TLS，
+         * 不包括排队、缓存和重试等待的时间，复用连接的请求不计入
+         */
+        public final LatencyHistogram.Snapshot connectLatency;
+        /**
+         * 从发出请求到收到响应头的耗时
+         */
+        public final LatencyHistogram.Snapshot ttfbLatency;
+        /**
+         * 从开始执行到响应内容读完的耗时
+         */
+        public final LatencyHistogram.Snapshot totalLatency;
+
+        Snapshot(String endpoint, long[] statusCounts, long bytesIn, long bytesOut,
+                 LatencyHistogram.Snapshot queueLatency, LatencyHistogram.Snapshot connectLatency,
+                 LatencyHistogram.Snapshot ttfbLatency, LatencyHistogram.Snapshot totalLatency) {
+            this.endpoint = endpoint;
+            this.statusCounts = statusCounts;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.queueLatency = queueLatency;
+            this.connectLatency = connectLatency;
+            this.ttfbLatency = ttfbLatency;
+            this.totalLatency = totalLatency;
+        }
+
+        /**
+         * @param statusClass 1-5 对应 1xx-5xx，0 为网络失败
+         */
+        public long statusCount(int statusClass) {
+            return statusCounts[statusClass];
+        }
+
+        public long errorCount() {
+            return statusCounts[0];
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + "{" +
+                    "count=" + totalLatency.count +
+                    ", 2xx=" + statusCounts[2] +
+                    ", 3xx=" + statusCounts[3] +
+                    ", 4xx=" + statusCounts[4] +
+                    ", 5xx=" + statusCounts[5] +
+                    ", errors=" + statusCounts[0] +
+                    ", bytesIn=" + bytesIn +
+                    ", bytesOut=" + bytesOut +
+                    ", queue=" + queueLatency +
+                    ", connect=" + connectLatency +
+                    ", ttfb=" + ttfbLatency +
+                    ", total=" + totalLatency +
+                    '}';
+        }
+    }
+}
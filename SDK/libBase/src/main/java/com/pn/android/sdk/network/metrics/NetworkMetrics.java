@@ -0,0 +1,362 @@
+package com.pn.android.sdk.network.metrics;
+
+import com.pn.android.sdk.network.resilience.ResilienceInterceptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Connection;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * 按接口统计请求的耗时、流量和状态码
+ * <p>{@link #interceptor()} 需要是第一个应用拦截器，{@link #attemptInterceptor()} 需要是最后一个应用拦截器，
+ * {@link #networkInterceptor()} 添加为网络拦截器，
+ * 通过 {@link com.pn.android.sdk.network.HttpUtil.Builder#metrics(NetworkMetrics)} 添加时会自动放到正确的位置。
+ * 耗时按 2 的幂分桶，记录时不加锁。</p>
+ */
+public class NetworkMetrics {
+    // 超出后的接口合并统计，避免路径中的变量导致无限增长
+    private static final int MAX_ENDPOINTS = 200;
+    private static final String OTHER = "other";
+    // 应用拦截器中加上的请求编号，网络拦截器据此找到对应的统计，发出前移除
+    private static final String HEADER_TRACE = "PN-Trace";
+    // 最后一个应用拦截器加上的本次尝试开始的时间，网络拦截器据此计算建立连接的耗时，发出前移除
+    private static final String HEADER_ATTEMPT = "PN-Trace-Attempt";
+
+    private final ConcurrentMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    // 已提交未开始执行的请求 → 提交的时间，Request 按引用比较
+    private final ConcurrentMap<Request, Long> queuedAt = new ConcurrentHashMap<>();
+    // 用过的连接，不在其中的是新建立的
+    private final Set<Connection> connections = Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>());
+    // 应用拦截器中开始、还没有返回响应的请求，key 为 HEADER_TRACE 的值；
+    // 对冲等情况下网络拦截器不在应用拦截器的线程中执行
+    private final ConcurrentMap<String, Trace> traces = new ConcurrentHashMap<>();
+    private final AtomicLong traceIds = new AtomicLong();
+
+    private final Interceptor interceptor = new CallInterceptor(this);
+
+    private final Interceptor attemptInterceptor = new AttemptInterceptor(this);
+
+    private final Interceptor networkInterceptor = new NetworkInterceptor(this);
+
+    /**
+     * @return client 中添加的统计，没有时返回 null
+     */
+    public static NetworkMetrics from(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof CallInterceptor) {
+                return ((CallInterceptor) interceptor).metrics;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 是否为统计添加的拦截器
+     */
+    public static boolean isMetricsInterceptor(Interceptor interceptor) {
+        return interceptor instanceof CallInterceptor || interceptor instanceof AttemptInterceptor
+                || interceptor instanceof NetworkInterceptor;
+    }
+
+    public Interceptor interceptor() {
+        return interceptor;
+    }
+
+    /**
+     * 记录每次尝试开始的时间，建立连接的耗时从这里算起，不包括之前的缓存、重试等待等耗时；
+     * 没有添加时不统计建立连接的耗时
+     */
+    public Interceptor attemptInterceptor() {
+        return attemptInterceptor;
+    }
+
+    public Interceptor networkInterceptor() {
+        return networkInterceptor;
+    }
+
+    /**
+     * 请求已提交，之后开始执行时记录排队的时间
+     */
+    public void markQueued(Request request) {
+        queuedAt.put(request, System.nanoTime());
+    }
+
+    /**
+     * 请求没有执行就结束了，例如排队中被取消或与其他请求合并
+     */
+    public void forget(Request request) {
+        queuedAt.remove(request);
+    }
+
+    /**
+     * @return 各接口的统计，按总耗时从多到少排列
+     */
+    public List<EndpointStats.Snapshot> snapshot() {
+        List<EndpointStats.Snapshot> snapshots = new ArrayList<>();
+        for (EndpointStats stats : endpoints.values()) {
+            snapshots.add(stats.snapshot());
+        }
+        Collections.sort(snapshots, new Comparator<EndpointStats.Snapshot>() {
+            @Override
+            public int compare(EndpointStats.Snapshot a, EndpointStats.Snapshot b) {
+                long x = a.totalLatency.totalNanos;
+                long y = b.totalLatency.totalNanos;
+                return x > y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        return snapshots;
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    private Response traceCall(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(ResilienceInterceptor.HEADER_HEDGE_COPY) != null) {
+            // 对冲发出的副本带着原请求的编号，不单独计数，网络耗时记在原请求上
+            return chain.proceed(request);
+        }
+        long start = System.nanoTime();
+        final EndpointStats stats = stats(request);
+        Long queued = queuedAt.remove(request);
+        if (queued != null) {
+            stats.queueLatency.record(start - queued);
+        }
+        Trace trace = new Trace(stats, start);
+        String traceId = String.valueOf(traceIds.incrementAndGet());
+        traces.put(traceId, trace);
+        Response response;
+        try {
+            response = chain.proceed(request.newBuilder().header(HEADER_TRACE, traceId).build());
+        } catch (IOException e) {
+            stats.recordStatus(0);
+            stats.totalLatency.record(System.nanoTime() - start);
+            throw e;
+        } finally {
+            traces.remove(traceId);
+        }
+        stats.recordStatus(response.code());
+        ResponseBody body = response.body();
+        if (body == null) {
+            stats.totalLatency.record(System.nanoTime() - start);
+            return response;
+        }
+        // 响应内容读完或关闭时才算结束
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(),
+                        Okio.buffer(new CountingSource(body.source(), trace))))
+                .build();
+    }
+
+    /**
+     * 重试和对冲的每次尝试都经过这里，各自带上开始的时间
+     */
+    private Response traceAttempt(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(HEADER_TRACE) == null) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+                .header(HEADER_ATTEMPT, String.valueOf(System.nanoTime()))
+                .build());
+    }
+
+    private Response traceNetwork(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        String traceId = request.header(HEADER_TRACE);
+        if (traceId == null) {
+            return chain.proceed(request);
+        }
+        String attempt = request.header(HEADER_ATTEMPT);
+        request = request.newBuilder().removeHeader(HEADER_TRACE).removeHeader(HEADER_ATTEMPT).build();
+        Trace trace = traces.get(traceId);
+        if (trace == null) {
+            // 原请求已经结束，例如对冲中没有用到的一方
+            return chain.proceed(request);
+        }
+        long start = System.nanoTime();
+        Connection connection = chain.connection();
+        if (connection != null && attempt != null && trace.connected.compareAndSet(false, true)) {
+            boolean fresh;
+            synchronized (connections) {
+                fresh = connections.add(connection);
+            }
+            if (fresh) {
+                trace.stats.connectLatency.record(start - Long.parseLong(attempt));
+            }
+        }
+        if (request.body() != null && request.body().contentLength() > 0) {
+            trace.stats.recordBytesOut(request.body().contentLength());
+        }
+        Response response = chain.proceed(request);
+        if (trace.responded.compareAndSet(false, true)) {
+            trace.stats.ttfbLatency.record(System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    private EndpointStats stats(Request request) {
+        String endpoint = endpoint(request);
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            if (endpoints.size() >= MAX_ENDPOINTS) {
+                endpoint = OTHER;
+                stats = endpoints.get(endpoint);
+            }
+            if (stats == null) {
+                stats = new EndpointStats(endpoint);
+                EndpointStats existing = endpoints.putIfAbsent(endpoint, stats);
+                if (existing != null) {
+                    stats = existing;
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 方法、域名和路径，路径中包含数字的段替换为 {id}
+     */
+    static String endpoint(Request request) {
+        HttpUrl url = request.url();
+        StringBuilder builder = new StringBuilder(request.method()).append(' ').append(url.host());
+        for (String segment : url.pathSegments()) {
+            builder.append('/');
+            if (containsDigit(segment)) {
+                builder.append("{id}");
+            } else {
+                builder.append(segment);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean containsDigit(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class CallInterceptor implements Interceptor {
+        final NetworkMetrics metrics;
+
+        CallInterceptor(NetworkMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return metrics.traceCall(chain);
+        }
+    }
+
+    private static class AttemptInterceptor implements Interceptor {
+        final NetworkMetrics metrics;
+
+        AttemptInterceptor(NetworkMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return metrics.traceAttempt(chain);
+        }
+    }
+
+    private static class NetworkInterceptor implements Interceptor {
+        final NetworkMetrics metrics;
+
+        NetworkInterceptor(NetworkMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return metrics.traceNetwork(chain);
+        }
+    }
+
+    private static class Trace {
+        final EndpointStats stats;
+        final long start;
+        // 重定向、重试和对冲时只记录第一次的连接和第一个响应
+        final AtomicBoolean connected = new AtomicBoolean();
+        final AtomicBoolean responded = new AtomicBoolean();
+
+        Trace(EndpointStats stats, long start) {
+            this.stats = stats;
+            this.start = start;
+        }
+    }
+
+    /**
+     * 统计读取的字节数，读完或关闭时记录总耗时
+     */
+    private static class CountingSource extends ForwardingSource {
+        private final Trace trace;
+        private long bytesRead;
+        private boolean done;
+
+        CountingSource(BufferedSource delegate, Trace trace) {
+            super(delegate);
+            this.trace = trace;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read;
+            try {
+                read = super.read(sink, byteCount);
+            } catch (IOException e) {
+                finish();
+                throw e;
+            }
+            if (read == -1) {
+                finish();
+            } else {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+
+        private void finish() {
+            if (done) {
+                return;
+            }
+            done = true;
+            trace.stats.recordBytesIn(bytesRead);
+            trace.stats.totalLatency.record(System.nanoTime() - trace.start);
+        }
+    }
+}
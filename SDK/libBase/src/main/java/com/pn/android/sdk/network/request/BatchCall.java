@@ -0,0 +1,233 @@
+package com.pn.android.sdk.network.request;
+
+import com.pn.android.sdk.network.HttpUtil;
+import com.pn.android.sdk.network.callback.BatchCallback;
+import com.pn.android.sdk.network.callback.Callback;
+import com.pn.android.sdk.network.callback.StringCallback;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+/**
+ * 一起发出的一组请求
+ * <p>各请求并发执行，使用 HTTP/2 时同一个域名的请求在一个连接上多路复用。
+ * 每个请求在后台线程解析，全部结束后只向主线程发送一次消息，依次执行各请求的回调和 {@link BatchCallback}。</p>
+ */
+public class BatchCall {
+    private static ScheduledExecutorService sTimer;
+
+    // 没有指定回调的请求读出响应内容的字符串
+    private static final Callback STRING_CALLBACK = new StringCallback() {
+        @Override
+        public void onError(Call call, Exception e, int id) {
+        }
+
+        @Override
+        public void onSuccess(String response, int id) {
+        }
+    };
+
+    private final List<RequestCall> calls = new ArrayList<>();
+    private final List<Callback> callbacks = new ArrayList<>();
+    private long timeout;
+
+    private BatchCallback batchCallback;
+    private BatchCallback.Result[] results;
+    private int remaining;
+    private boolean executed;
+    private boolean finished;
+    private ScheduledFuture<?> timeoutFuture;
+
+    public BatchCall add(RequestCall call) {
+        return add(call, null);
+    }
+
+    /**
+     * @param callback 该请求的回调，在主线程中与其他请求的回调一起执行
+     */
+    public BatchCall add(RequestCall call, Callback callback) {
+        calls.add(call);
+        callbacks.add(callback == null ? STRING_CALLBACK : callback);
+        return this;
+    }
+
+    /**
+     * @param timeout 整组的超时，单位：毫秒，超时后未结束的请求被取消，结果为 {@link InterruptedIOException}
+     */
+    public BatchCall timeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * 发出整组请求，只能调用一次
+     */
+    public void execute(BatchCallback callback) {
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Already Executed");
+            }
+            executed = true;
+            batchCallback = callback;
+            results = new BatchCallback.Result[calls.size()];
+            remaining = calls.size();
+            if (remaining == 0) {
+                finish();
+                return;
+            }
+        }
+        // 先创建所有请求再开始计时，超时取消时每个请求都已有对应的 Call
+        for (int i = 0; i < calls.size(); i++) {
+            RequestCall requestCall = calls.get(i);
+            Callback itemCallback = callbacks.get(i);
+            requestCall.buildCall(itemCallback);
+            itemCallback.onStart(requestCall.getRequest(), requestCall.getHttpRequest().getId());
+        }
+        synchronized (this) {
+            if (timeout > 0) {
+                timeoutFuture = timer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTimeout();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            HttpUtil.getInstance().enqueue(calls.get(i), new ItemCallback(i));
+        }
+    }
+
+    /**
+     * 取消整组请求，未结束的请求结果为取消
+     */
+    public void cancel() {
+        for (RequestCall call : calls) {
+            if (call.getCall() != null) {
+                HttpUtil.getInstance().cancel(call.getCall());
+            }
+        }
+    }
+
+    private void complete(int index, Object response, Exception error) {
+        synchronized (this) {
+            if (finished || results[index] != null) {
+                return;
+            }
+            results[index] = new BatchCallback.Result(calls.get(index), response, error);
+            if (--remaining == 0) {
+                finish();
+            }
+        }
+    }
+
+    private void onTimeout() {
+        List<Call> timedOut = new ArrayList<>();
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = new BatchCallback.Result(calls.get(i), null, new InterruptedIOException("timeout"));
+                    Call call = calls.get(i).getCall();
+                    if (call != null) {
+                        timedOut.add(call);
+                    }
+                }
+            }
+            finish();
+        }
+        for (Call call : timedOut) {
+            HttpUtil.getInstance().cancel(call);
+        }
+    }
+
+    /**
+     * 加锁调用
+     */
+    private void finish() {
+        finished = true;
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+        }
+        final List<BatchCallback.Result> list = Arrays.asList(results);
+        HttpUtil.getInstance().getDelivery().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < list.size(); i++) {
+                    BatchCallback.Result result = list.get(i);
+                    Callback itemCallback = callbacks.get(i);
+                    int id = result.call.getHttpRequest().getId();
+                    if (result.isSuccessful()) {
+                        itemCallback.onSuccess(result.response, id);
+                    } else {
+                        itemCallback.onError(result.call.getCall(), result.error, id);
+                    }
+                    itemCallback.onComplete(id);
+                }
+                if (batchCallback != null) {
+                    batchCallback.onComplete(list);
+                }
+            }
+        });
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (sTimer == null) {
+            sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "HttpUtil-batch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sTimer;
+    }
+
+    private class ItemCallback implements okhttp3.Callback {
+        private final int index;
+
+        ItemCallback(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            complete(index, null, e);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            Callback itemCallback = callbacks.get(index);
+            int id = calls.get(index).getHttpRequest().getId();
+            try {
+                if (call.isCanceled()) {
+                    complete(index, null, new IOException("Canceled!"));
+                } else if (!itemCallback.validateReponse(response, id)) {
+                    complete(index, null, new IOException("request failed , reponse's code is : " + response.code()));
+                } else {
+                    complete(index, itemCallback.parseResponse(response, id), null);
+                }
+            } catch (Exception e) {
+                complete(index, null, e);
+            } finally {
+                if (response.body() != null)
+                    response.body().close();
+            }
+        }
+    }
+}
@@ -43,6 +43,10 @@ public class CountingRequestBody extends RequestBody {
         BufferedSink bufferedSink = Okio.buffer(countingSink);
         delegate.writeTo(bufferedSink);
         bufferedSink.flush();
+        if (contentLength() < 0) {
+            // 长度未知时写完才能确定总数
+            listener.onRequestProgress(countingSink.bytesWritten, countingSink.bytesWritten);
+        }
     }
 
     protected final class CountingSink extends ForwardingSink {
@@ -74,4 +74,8 @@ public abstract class HttpRequest {
         return id;
     }
 
+    public Object getTag() {
+        return tag;
+    }
+
 }
@@ -1,8 +1,8 @@
 package com.pn.android.sdk.network.request;
 
-import com.pn.android.sdk.network.HttpUtil;
 import com.pn.android.sdk.network.builder.PostFormBuilder;
 import com.pn.android.sdk.network.callback.Callback;
+import com.pn.android.sdk.network.callback.ProgressReporter;
 
 import java.io.UnsupportedEncodingException;
 import java.net.FileNameMap;
@@ -50,17 +50,11 @@ public class PostFormRequest extends HttpRequest {
     @Override
     protected RequestBody wrapRequestBody(RequestBody requestBody, final Callback callback) {
         if (callback == null) return requestBody;
+        final ProgressReporter reporter = new ProgressReporter(callback, id);
         CountingRequestBody countingRequestBody = new CountingRequestBody(requestBody, new CountingRequestBody.Listener() {
             @Override
-            public void onRequestProgress(final long bytesWritten, final long contentLength) {
-
-                HttpUtil.getInstance().getDelivery().execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        callback.onProgress(bytesWritten * 1.0f / contentLength, contentLength, id);
-                    }
-                });
-
+            public void onRequestProgress(long bytesWritten, long contentLength) {
+                reporter.update(bytesWritten, contentLength);
             }
         });
         return countingRequestBody;
@@ -1,10 +1,13 @@
 package com.pn.android.sdk.network.request;
 
 import com.pn.android.sdk.network.HttpUtil;
+import com.pn.android.sdk.network.cache.CachePolicy;
 import com.pn.android.sdk.network.callback.Callback;
+import com.pn.android.sdk.network.resilience.ResilienceInterceptor;
+import com.pn.android.sdk.network.schedule.Priority;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
@@ -12,15 +15,21 @@ import okhttp3.Request;
 import okhttp3.Response;
 
 public class RequestCall {
+    // 请求的编号，重试时按编号查询请求是否已取消，对冲的副本按编号找到原请求
+    private static final AtomicLong sCallIds = new AtomicLong();
+
     private HttpRequest httpRequest;
     private Request request;
+    private OkHttpClient client;
     private Call call;
 
     private long readTimeOut;
     private long writeTimeOut;
     private long connTimeOut;
-
-    private OkHttpClient clone;
+    private int cachePolicy = CachePolicy.DEFAULT;
+    private int priority = Priority.NORMAL;
+    private Object group;
+    private boolean hedged;
 
     public RequestCall(HttpRequest request) {
         this.httpRequest = request;
@@ -41,23 +50,56 @@ public class RequestCall {
         return this;
     }
 
-    public Call buildCall(Callback callback) {
-        request = generateRequest(callback);
-        if (readTimeOut > 0 || writeTimeOut > 0 || connTimeOut > 0) {
-            readTimeOut = readTimeOut > 0 ? readTimeOut : HttpUtil.DEFAULT_MILLISECONDS;
-            writeTimeOut = writeTimeOut > 0 ? writeTimeOut : HttpUtil.DEFAULT_MILLISECONDS;
-            connTimeOut = connTimeOut > 0 ? connTimeOut : HttpUtil.DEFAULT_MILLISECONDS;
+    public RequestCall cachePolicy(@CachePolicy.Policy int cachePolicy) {
+        this.cachePolicy = cachePolicy;
+        return this;
+    }
+
+    public RequestCall priority(@Priority.Level int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public RequestCall group(Object group) {
+        this.group = group;
+        return this;
+    }
+
+    public Object getGroup() {
+        return group;
+    }
 
-            clone = HttpUtil.getInstance().getOkHttpClient().newBuilder()
-                    .readTimeout(readTimeOut, TimeUnit.MILLISECONDS)
-                    .writeTimeout(writeTimeOut, TimeUnit.MILLISECONDS)
-                    .connectTimeout(connTimeOut, TimeUnit.MILLISECONDS)
-                    .build();
+    /**
+     * @param hedged 超时未响应时是否再发出一个相同的请求，只对 GET、HEAD 生效，
+     *               需要通过 {@link HttpUtil.Builder#resilience(ResilienceInterceptor)} 开启
+     */
+    public RequestCall hedged(boolean hedged) {
+        this.hedged = hedged;
+        return this;
+    }
 
-            call = clone.newCall(request);
+    public Call buildCall(Callback callback) {
+        request = CachePolicy.apply(generateRequest(callback), cachePolicy);
+        if (readTimeOut > 0 || writeTimeOut > 0 || connTimeOut > 0) {
+            // 相同超时的请求共用一个 client，和默认 client 共用连接池
+            client = HttpUtil.getInstance().getOkHttpClient(connTimeOut, readTimeOut, writeTimeOut);
         } else {
-            call = HttpUtil.getInstance().getOkHttpClient().newCall(request);
+            client = HttpUtil.getInstance().getOkHttpClient();
+        }
+        // 只有 client 中有重试的拦截器时才标记，否则标记会发给服务端
+        if (ResilienceInterceptor.from(client) != null) {
+            String callId = String.valueOf(sCallIds.incrementAndGet());
+            Request.Builder builder = request.newBuilder().header(ResilienceInterceptor.HEADER_CALL, callId);
+            if (hedged) {
+                builder.header(ResilienceInterceptor.HEADER_HEDGE, callId);
+            }
+            request = builder.build();
         }
+        call = client.newCall(request);
         return call;
     }
 
@@ -77,6 +119,13 @@ public class RequestCall {
         return call;
     }
 
+    /**
+     * @return 发出请求的 client，{@link #buildCall(Callback)} 之前为 null
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
     public Request getRequest() {
         return request;
     }
@@ -87,12 +136,17 @@ public class RequestCall {
 
     public Response execute() throws IOException {
         buildCall(null);
-        return call.execute();
+        HttpUtil.getInstance().track(this);
+        try {
+            return call.execute();
+        } finally {
+            HttpUtil.getInstance().untrack(call);
+        }
     }
 
     public void cancel() {
         if (call != null) {
-            call.cancel();
+            HttpUtil.getInstance().cancel(call);
         }
     }
 }
@@ -0,0 +1,97 @@
+package com.pn.android.sdk.network.resilience;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个域名的熔断器
+ * <p>连续失败达到阈值后断开，断开期间的请求直接失败；经过一段时间后放行一个试探请求，
+ * 成功则恢复，失败则继续断开。</p>
+ */
+public final class CircuitBreaker {
+
+    /**
+     * 正常放行
+     */
+    public static final int CLOSED = 0;
+    /**
+     * 断开，请求直接失败
+     */
+    public static final int OPEN = 1;
+    /**
+     * 放行一个试探请求
+     */
+    public static final int HALF_OPEN = 2;
+
+    @IntDef({CLOSED, OPEN, HALF_OPEN})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface State {
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private int state = CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * @param failureThreshold 连续失败多少次后断开
+     * @param openMillis       断开多久后放行试探请求
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return 是否放行请求，放行后需要调用 {@link #onSuccess()}、{@link #onFailure()} 或 {@link #onIgnored()}
+     */
+    public synchronized boolean allowRequest() {
+        if (state() == OPEN) {
+            return false;
+        }
+        if (state == HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+            probing = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        state = CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    public synchronized void onFailure() {
+        if (state == HALF_OPEN || ++failures >= failureThreshold) {
+            state = OPEN;
+            openedAt = System.nanoTime();
+            failures = 0;
+            probing = false;
+        }
+    }
+
+    /**
+     * 请求被取消，不计入成功或失败
+     */
+    public synchronized void onIgnored() {
+        probing = false;
+    }
+
+    @State
+    public synchronized int state() {
+        if (state == OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = HALF_OPEN;
+            probing = false;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,14 @@
+package com.pn.android.sdk.network.resilience;
+
+import java.io.IOException;
+
+/**
+ * 熔断器断开，请求没有发出
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String host) {
+        super("circuit open for " + host);
+    }
+}
@@ -0,0 +1,436 @@
+package com.pn.android.sdk.network.resilience;
+
+import com.pn.android.sdk.network.HttpUtil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 失败重试、对冲请求和按域名熔断
+ * <p>幂等的请求（GET、HEAD、PUT、DELETE、OPTIONS）在网络失败或返回 408、429、502、503、504 时按指数退避加随机抖动重试；
+ * 标记了 {@link #HEADER_HEDGE} 的 GET、HEAD 请求超过 hedgeDelay 没有响应时再发出一个相同的请求，使用先返回的响应；
+ * 同一个域名连续失败后熔断，期间的请求直接抛出 {@link CircuitOpenException}。</p>
+ * <p>通过 {@link HttpUtil.Builder#resilience(ResilienceInterceptor)} 添加，在缓存降级之前重试。</p>
+ */
+public class ResilienceInterceptor implements Interceptor {
+
+    /**
+     * 请求的编号，由 {@link com.pn.android.sdk.network.request.RequestCall} 在 client 中有本拦截器时设置，
+     * 失败时按编号通过 {@link HttpUtil#isCanceled(String)} 判断请求是否已取消，不会发给服务端
+     */
+    public static final String HEADER_CALL = "PN-Call";
+    /**
+     * 标记需要对冲的请求，值为请求的编号，由 {@link com.pn.android.sdk.network.request.RequestCall#hedged(boolean)}
+     * 在 client 中有本拦截器时设置，不会发给服务端
+     */
+    public static final String HEADER_HEDGE = "PN-Hedge";
+    /**
+     * 标记对冲发出的副本，副本不再重试和对冲，也不计入 {@link com.pn.android.sdk.network.metrics.NetworkMetrics}
+     */
+    public static final String HEADER_HEDGE_COPY = "PN-Hedge-Copy";
+
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(
+            Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS"));
+
+    private static ExecutorService sHedgeExecutor;
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long hedgeDelay;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final Random random = new Random();
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private ResilienceInterceptor(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.baseDelay = builder.baseDelay;
+        this.maxDelay = builder.maxDelay;
+        this.hedgeDelay = builder.hedgeDelay;
+        this.failureThreshold = builder.failureThreshold;
+        this.openMillis = builder.openMillis;
+    }
+
+    /**
+     * @return client 中添加的拦截器，没有时返回 null
+     */
+    public static ResilienceInterceptor from(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof ResilienceInterceptor) {
+                return (ResilienceInterceptor) interceptor;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.cacheControl().onlyIfCached()) {
+            // 只读缓存，不会访问网络
+            return chain.proceed(request);
+        }
+        boolean copy = request.header(HEADER_HEDGE_COPY) != null;
+        String callId = request.header(HEADER_CALL);
+        String hedgeId = request.header(HEADER_HEDGE);
+        boolean hedged = hedgeId != null;
+        if (copy || callId != null || hedged) {
+            request = request.newBuilder()
+                    .removeHeader(HEADER_CALL)
+                    .removeHeader(HEADER_HEDGE)
+                    .removeHeader(HEADER_HEDGE_COPY)
+                    .build();
+        }
+        if (copy) {
+            return chain.proceed(request);
+        }
+        String method = request.method();
+        hedged = hedged && hedgeDelay > 0 && ("GET".equals(method) || "HEAD".equals(method));
+        int maxAttempts = IDEMPOTENT_METHODS.contains(method) ? maxRetries + 1 : 1;
+        String host = request.url().host() + ":" + request.url().port();
+        CircuitBreaker breaker = breaker(host);
+
+        for (int attempt = 1; ; attempt++) {
+            if (breaker != null && !breaker.allowRequest()) {
+                rejectedCount.incrementAndGet();
+                throw new CircuitOpenException(host);
+            }
+            Response response;
+            try {
+                response = hedged ? proceedHedged(chain, request, callId, hedgeId) : chain.proceed(request);
+            } catch (IOException e) {
+                if (isCanceled(callId)) {
+                    if (breaker != null) breaker.onIgnored();
+                    throw e;
+                }
+                if (breaker != null) breaker.onFailure();
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                backoff(attempt, -1);
+                continue;
+            }
+            if (breaker != null) {
+                if (response.code() >= 500) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+            if (attempt >= maxAttempts || !isRetryable(response.code())) {
+                return response;
+            }
+            long retryAfter = retryAfter(response);
+            response.close();
+            backoff(attempt, retryAfter);
+        }
+    }
+
+    /**
+     * 先发出原请求，超过 hedgeDelay 没有结果时再发出一个副本，返回先成功的响应，另一个响应丢弃
+     * <p>副本由原请求所在的 client 发出，和原请求在同一个 tag 和分组下；原请求被取消时副本一起取消。
+     * 先到的响应需要重试或失败时等另一个也结束，返回时没有仍在执行的原请求，重试不会和它同时进行。</p>
+     */
+    private Response proceedHedged(final Chain chain, final Request request, String callId, String hedgeId)
+            throws IOException {
+        final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        hedgeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Object result;
+                try {
+                    result = chain.proceed(request);
+                } catch (IOException e) {
+                    result = e;
+                } catch (RuntimeException e) {
+                    result = new IOException(e);
+                }
+                outcomes.add(new Outcome(false, result));
+            }
+        });
+        try {
+            Outcome first = outcomes.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                return first.unwrap();
+            }
+            hedgeCount.incrementAndGet();
+            final Call hedge = HttpUtil.getInstance().newHedgeCall(hedgeId,
+                    request.newBuilder().header(HEADER_HEDGE_COPY, "1").build());
+            hedgeExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Object result;
+                    try {
+                        result = hedge.execute();
+                    } catch (IOException e) {
+                        result = e;
+                    } finally {
+                        HttpUtil.getInstance().untrack(hedge);
+                    }
+                    outcomes.add(new Outcome(true, result));
+                }
+            });
+            Outcome winner = outcomes.take();
+            if (!winner.hedge && winner.result instanceof IOException && isCanceled(callId)) {
+                // 原请求被取消，不再等副本
+                hedge.cancel();
+                discardLater(outcomes);
+                throw (IOException) winner.result;
+            }
+            if (winner.usable()) {
+                // 原请求无法单独取消，副本先返回时丢弃原请求之后的响应
+                if (!winner.hedge) {
+                    hedge.cancel();
+                }
+                discardLater(outcomes);
+            } else {
+                // 一个失败或需要重试时等另一个结束，另一个可用时使用它
+                Outcome other = outcomes.take();
+                if (other.usable() || winner.result instanceof IOException) {
+                    winner.close();
+                    winner = other;
+                } else {
+                    other.close();
+                }
+            }
+            if (winner.hedge && winner.result instanceof Response) {
+                hedgeWinCount.incrementAndGet();
+            }
+            return winner.unwrap();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * 关闭之后到达的另一个响应
+     */
+    private static void discardLater(final BlockingQueue<Outcome> outcomes) {
+        hedgeExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Outcome loser = outcomes.take();
+                    if (loser.result instanceof Response) {
+                        ((Response) loser.result).close();
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * @param retryAfter 服务端要求的等待时间（毫秒），没有时为 -1
+     */
+    private void backoff(int attempt, long retryAfter) throws InterruptedIOException {
+        long delay;
+        if (retryAfter >= 0) {
+            delay = Math.min(retryAfter, maxDelay);
+        } else {
+            long exp = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+            // 一半固定，一半随机，避免大量客户端同时重试
+            delay = exp / 2 + (long) (random.nextDouble() * (exp / 2 + 1));
+        }
+        retryCount.incrementAndGet();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private CircuitBreaker breaker(String host) {
+        if (failureThreshold <= 0) {
+            return null;
+        }
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(failureThreshold, openMillis);
+            CircuitBreaker existing = breakers.putIfAbsent(host, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * 直接通过 client 发出的请求没有编号，无法判断，按普通的失败处理
+     */
+    private static boolean isCanceled(String callId) {
+        return callId != null && HttpUtil.getInstance().isCanceled(callId);
+    }
+
+    private static long retryAfter(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return 累计的重试次数
+     */
+    public long retryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return 累计发出的对冲请求数
+     */
+    public long hedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return 对冲请求先返回的次数
+     */
+    public long hedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    /**
+     * @return 因熔断直接失败的请求数
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return 域名和端口 → 熔断器状态
+     */
+    public Map<String, Integer> breakerStates() {
+        Map<String, Integer> states = new HashMap<>();
+        for (Map.Entry<String, CircuitBreaker> entry : breakers.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().state());
+        }
+        return states;
+    }
+
+    private static synchronized ExecutorService hedgeExecutor() {
+        if (sHedgeExecutor == null) {
+            sHedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "HttpUtil-hedge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sHedgeExecutor;
+    }
+
+    private static class Outcome {
+        // 是否为对冲发出的副本
+        final boolean hedge;
+        // Response 或 IOException
+        final Object result;
+
+        Outcome(boolean hedge, Object result) {
+            this.hedge = hedge;
+            this.result = result;
+        }
+
+        /**
+         * @return 是否为不需要重试的响应
+         */
+        boolean usable() {
+            return result instanceof Response && !isRetryable(((Response) result).code());
+        }
+
+        void close() {
+            if (result instanceof Response) {
+                ((Response) result).close();
+            }
+        }
+
+        Response unwrap() throws IOException {
+            if (result instanceof IOException) {
+                throw (IOException) result;
+            }
+            return (Response) result;
+        }
+    }
+
+    public static class Builder {
+        private int maxRetries = 2;
+        private long baseDelay = 200;
+        private long maxDelay = 5_000;
+        private long hedgeDelay = 500;
+        private int failureThreshold = 5;
+        private long openMillis = 30_000;
+
+        /**
+         * @param maxRetries 幂等请求最多重试的次数，默认 2，0 表示不重试
+         * @param baseDelay  第一次重试前的等待时间（毫秒），之后每次翻倍，默认 200
+         * @param maxDelay   每次等待的上限（毫秒），默认 5000
+         */
+        public Builder retry(int maxRetries, long baseDelay, long maxDelay) {
+            this.maxRetries = maxRetries;
+            this.baseDelay = baseDelay;
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * @param hedgeDelay 对冲请求超过该时间（毫秒）没有响应时发出副本，默认 500，0 表示不对冲
+         */
+        public Builder hedgeDelay(long hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold 同一个域名连续失败多少次后熔断，默认 5，0 表示不熔断
+         * @param openMillis       熔断多久后放行试探请求，默认 30 秒
+         */
+        public Builder circuitBreaker(int failureThreshold, long openMillis) {
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+            return this;
+        }
+
+        public ResilienceInterceptor build() {
+            return new ResilienceInterceptor(this);
+        }
+    }
+}
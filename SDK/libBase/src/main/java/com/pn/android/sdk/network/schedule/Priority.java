@@ -0,0 +1,35 @@
+package com.pn.android.sdk.network.schedule;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * 请求的优先级，由 {@link RequestScheduler} 按优先级从高到低发出
+ */
+public final class Priority {
+
+    /**
+     * 用户正在等待的请求，如登录、下单，不限并发数
+     */
+    public static final int HIGH = 0;
+    /**
+     * 默认优先级
+     */
+    public static final int NORMAL = 1;
+    /**
+     * 预加载等后台请求，默认最多同时执行 2 个
+     */
+    public static final int LOW = 2;
+
+    @IntDef({HIGH, NORMAL, LOW})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Level {
+    }
+
+    static final int COUNT = 3;
+
+    private Priority() {
+    }
+}
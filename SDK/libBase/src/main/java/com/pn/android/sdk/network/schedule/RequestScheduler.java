@@ -0,0 +1,266 @@
+package com.pn.android.sdk.network.schedule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+
+/**
+ * 按优先级调度异步请求
+ * <p>每次从有空闲名额的最高优先级中取出请求发出，同一优先级内按 tag 轮流发出，
+ * 一个页面的大量请求不会一直挡住其他页面。超出总数或该优先级并发数的请求在这里排队，
+ * 发出后由 OkHttp 的调度器按域名限制并发。</p>
+ */
+public class RequestScheduler {
+    private final List<Map<Object, ArrayDeque<Task>>> mQueues = new ArrayList<>();
+    // 排队中的请求，按 Call 查找
+    private final Map<Call, Task> mQueued = new HashMap<>();
+    private final int[] mRunning = new int[Priority.COUNT];
+    private final int[] mMaxRunning = new int[Priority.COUNT];
+    private int mRunningTotal;
+    private int mMaxRunningTotal;
+
+    /**
+     * @param maxRunning 同时执行的最大请求数，一般与 OkHttp 调度器的 maxRequests 相同
+     */
+    public RequestScheduler(int maxRunning) {
+        for (int i = 0; i < Priority.COUNT; i++) {
+            mQueues.add(new LinkedHashMap<Object, ArrayDeque<Task>>());
+            mMaxRunning[i] = Integer.MAX_VALUE;
+        }
+        mMaxRunning[Priority.LOW] = 2;
+        mMaxRunningTotal = maxRunning;
+    }
+
+    /**
+     * 设置同时执行的最大请求数
+     */
+    public void setMaxRunning(int maxRunning) {
+        synchronized (this) {
+            mMaxRunningTotal = maxRunning;
+        }
+        promote();
+    }
+
+    /**
+     * 设置某个优先级同时执行的最大请求数，{@link Priority#LOW} 默认为 2，其他不限
+     */
+    public void setMaxRunning(@Priority.Level int priority, int maxRunning) {
+        synchronized (this) {
+            mMaxRunning[priority] = maxRunning;
+        }
+        promote();
+    }
+
+    public void submit(Task task) {
+        synchronized (this) {
+            enqueue(task);
+        }
+        promote();
+    }
+
+    /**
+     * 请求执行结束（包括失败），释放名额
+     */
+    public void finished(Task task) {
+        release(task);
+        promote();
+    }
+
+    private synchronized void release(Task task) {
+        if (task.running) {
+            task.running = false;
+            mRunning[task.priority]--;
+            mRunningTotal--;
+        }
+    }
+
+    /**
+     * 移除排队中的请求，回调 {@link Task#onCanceled()}
+     *
+     * @return 是否在排队中
+     */
+    public boolean remove(Call call) {
+        Task task;
+        synchronized (this) {
+            task = mQueued.remove(call);
+            if (task != null) {
+                Map<Object, ArrayDeque<Task>> queue = mQueues.get(task.priority);
+                ArrayDeque<Task> tasks = queue.get(task.tag);
+                tasks.remove(task);
+                if (tasks.isEmpty()) {
+                    queue.remove(task.tag);
+                }
+            }
+        }
+        if (task != null) {
+            task.onCanceled();
+        }
+        return task != null;
+    }
+
+    /**
+     * 移除该 tag 排队中的请求，回调 {@link Task#onCanceled()}，离开页面时使用
+     *
+     * @return 移除的请求数
+     */
+    public int removeTag(Object tag) {
+        List<Task> removed = new ArrayList<>();
+        synchronized (this) {
+            for (Map<Object, ArrayDeque<Task>> queue : mQueues) {
+                ArrayDeque<Task> tasks = queue.remove(tag);
+                if (tasks != null) {
+                    for (Task task : tasks) {
+                        mQueued.remove(task.call);
+                    }
+                    removed.addAll(tasks);
+                }
+            }
+        }
+        for (Task task : removed) {
+            task.onCanceled();
+        }
+        return removed.size();
+    }
+
+    /**
+     * 修改该 tag 排队中的请求的优先级，已发出的请求不受影响
+     * <p>例如页面进入后台时降为 {@link Priority#LOW}，回到前台时恢复。</p>
+     *
+     * @return 修改的请求数
+     */
+    public int setPriority(Object tag, @Priority.Level int priority) {
+        int count = 0;
+        synchronized (this) {
+            for (int i = 0; i < Priority.COUNT; i++) {
+                if (i == priority) {
+                    continue;
+                }
+                ArrayDeque<Task> tasks = mQueues.get(i).remove(tag);
+                if (tasks == null) {
+                    continue;
+                }
+                for (Task task : tasks) {
+                    task.priority = priority;
+                    enqueue(task);
+                }
+                count += tasks.size();
+            }
+        }
+        promote();
+        return count;
+    }
+
+    /**
+     * @return 排队中的请求数
+     */
+    public synchronized int queuedCount() {
+        return mQueued.size();
+    }
+
+    public synchronized int runningCount() {
+        return mRunningTotal;
+    }
+
+    private void enqueue(Task task) {
+        Map<Object, ArrayDeque<Task>> queue = mQueues.get(task.priority);
+        ArrayDeque<Task> tasks = queue.get(task.tag);
+        if (tasks == null) {
+            tasks = new ArrayDeque<>();
+            queue.put(task.tag, tasks);
+        }
+        tasks.add(task);
+        mQueued.put(task.call, task);
+    }
+
+    /**
+     * 在锁外发出可以执行的请求
+     */
+    private void promote() {
+        while (true) {
+            List<Task> ready = new ArrayList<>();
+            synchronized (this) {
+                Task task;
+                while ((task = next()) != null) {
+                    ready.add(task);
+                }
+            }
+            if (ready.isEmpty()) {
+                return;
+            }
+            for (Task task : ready) {
+                if (task.call.isCanceled()) {
+                    // 排队时已取消，释放名额后继续取下一个
+                    release(task);
+                    task.onCanceled();
+                } else {
+                    task.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出有名额的最高优先级中下一个 tag 的第一个请求，该 tag 移到队尾
+     */
+    private Task next() {
+        if (mRunningTotal >= mMaxRunningTotal) {
+            return null;
+        }
+        for (int i = 0; i < Priority.COUNT; i++) {
+            Map<Object, ArrayDeque<Task>> queue = mQueues.get(i);
+            if (queue.isEmpty() || mRunning[i] >= mMaxRunning[i]) {
+                continue;
+            }
+            Iterator<Map.Entry<Object, ArrayDeque<Task>>> it = queue.entrySet().iterator();
+            Map.Entry<Object, ArrayDeque<Task>> first = it.next();
+            ArrayDeque<Task> tasks = first.getValue();
+            Task task = tasks.poll();
+            it.remove();
+            if (!tasks.isEmpty()) {
+                queue.put(first.getKey(), tasks);
+            }
+            mQueued.remove(task.call);
+            task.running = true;
+            mRunning[i]++;
+            mRunningTotal++;
+            return task;
+        }
+        return null;
+    }
+
+    /**
+     * 调度的一个请求
+     */
+    public abstract static class Task {
+        final Call call;
+        final Object tag;
+        int priority;
+        boolean running;
+
+        /**
+         * @param call 用来判断请求是否已取消
+         */
+        protected Task(Call call, @Priority.Level int priority) {
+            this.call = call;
+            // 没有设置 tag 时为请求本身，各自一组
+            this.tag = call.request().tag();
+            this.priority = priority;
+        }
+
+        /**
+         * 发出请求，请求结束后需要调用 {@link RequestScheduler#finished(Task)}
+         */
+        protected abstract void start();
+
+        /**
+         * 排队中被取消
+         */
+        protected abstract void onCanceled();
+    }
+}
@@ -7,29 +7,80 @@ import android.graphics.Canvas;
 import android.graphics.PixelFormat;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.FileObserver;
+import android.support.annotation.IntDef;
+
+import com.pn.android.sdk.utils.cache.CacheEntry;
+import com.pn.android.sdk.utils.cache.CacheManifest;
+import com.pn.android.sdk.utils.cache.CacheOutputStream;
+import com.pn.android.sdk.utils.cache.CacheStats;
+import com.pn.android.sdk.utils.cache.CacheStore;
+import com.pn.android.sdk.utils.cache.Codec;
+import com.pn.android.sdk.utils.cache.Codecs;
+import com.pn.android.sdk.utils.cache.EntryHeader;
+import com.pn.android.sdk.utils.cache.EntryInputStream;
+import com.pn.android.sdk.utils.cache.EvictionPolicies;
+import com.pn.android.sdk.utils.cache.EvictionPolicy;
+import com.pn.android.sdk.utils.cache.ExpiryIndex;
+import com.pn.android.sdk.utils.cache.ExpirySweeper;
+import com.pn.android.sdk.utils.cache.JournalCacheStore;
+import com.pn.android.sdk.utils.cache.MemoryCache;
+import com.pn.android.sdk.utils.cache.WriteBehindStore;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
  * 缓存相关工具类
@@ -38,10 +89,82 @@ public class CacheUtil {
 
     public static final int TIME_HOUR = 60 * 60;
     public static final int TIME_DAY = TIME_HOUR * 24;
+
+    /**
+     * 每个key一个文件
+     */
+    public static final int ENGINE_FILE = 0;
+    /**
+     * 小数据打包追加写入段文件，见 {@link JournalCacheStore}
+     */
+    public static final int ENGINE_JOURNAL = 1;
+
+    @IntDef({ENGINE_FILE, ENGINE_JOURNAL})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Engine {
+    }
+
+    /**
+     * 最近最少使用的先淘汰
+     */
+    public static final int EVICTION_LRU = 0;
+    /**
+     * 使用次数最少的先淘汰
+     */
+    public static final int EVICTION_LFU = 1;
+    /**
+     * 占用空间最大的先淘汰
+     */
+    public static final int EVICTION_SIZE = 2;
+    /**
+     * 最先过期的先淘汰，没有设置过期时间的按最近最少使用淘汰
+     */
+    public static final int EVICTION_TTL = 3;
+
+    @IntDef({EVICTION_LRU, EVICTION_LFU, EVICTION_SIZE, EVICTION_TTL})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Eviction {
+    }
+
     private static final int MAX_SIZE = 1000 * 1000 * 50; // 50 mb
     private static final int MAX_COUNT = Integer.MAX_VALUE; // 不限制存放数据的数量
+    private static final long WRITE_BEHIND_DELAY = 1000; // 1 s
+    private static final long WRITE_BEHIND_MAX_PENDING = 1024 * 1024; // 1 mb
+    private static final int DIRECTORY_LEVELS = 1;
+    private static final long SWEEP_INTERVAL = 60 * 1000; // 1 min
+    private static final int SWEEP_MAX_COUNT = 100;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
     private static Map<String, CacheUtil> mInstanceMap = new HashMap<>();
-    private CacheManager mCacheManager;
+    private static ScheduledExecutorService sStatsExecutor;
+    private static ExecutorService sLoaderExecutor;
+    private CacheStore mStore;
+    // 写后模式下不为 null
+    private WriteBehindStore mWriteBehindStore;
+    private ExpirySweeper mSweeper;
+    private final long mMaxSize;
+    // 内存缓存：String / byte[] 与解码后的 Bitmap 分开计算容量
+    private final MemoryCache<Object> mMemoryCache;
+    private final MemoryCache<Bitmap> mBitmapMemoryCache;
+    // 先于存储引擎创建，引擎中记录淘汰情况
+    private final CacheStats mStats = new CacheStats();
+    private volatile StatsListener mStatsListener;
+    private ScheduledFuture<?> mStatsReport;
+    // 正在加载的 key，同一个 key 同时只有一个加载任务
+    private final ConcurrentMap<String, FutureTask<?>> mLoads = new ConcurrentHashMap<>();
+    // 当前线程上正在执行 loader 的 key，loader 中读取同一个 key 时立即失败而不是等待自己
+    private final ThreadLocal<Set<String>> mLoadingKeys = new ThreadLocal<Set<String>>() {
+        @Override
+        protected Set<String> initialValue() {
+            return new HashSet<>();
+        }
+    };
+    private volatile OnChangeListener mOnChangeListener;
+    // String、JSON、Serializable 数据的编码方式，为 null 时不编码
+    private final Codec mCodec;
+    private final int mCompressMinSize;
+    private final Bitmap.CompressFormat mBitmapFormat;
+    private final int mBitmapQuality;
 
     public static CacheUtil get(Context ctx) {
         return get(ctx, "CacheUtil");
@@ -62,24 +185,264 @@ public class CacheUtil {
     }
 
     public static CacheUtil get(File cacheDir, long max_zise, int max_count) {
-        CacheUtil manager = mInstanceMap.get(cacheDir.getAbsoluteFile() + myPid());
-        if (manager == null) {
-            manager = new CacheUtil(cacheDir, max_zise, max_count);
-            mInstanceMap.put(cacheDir.getAbsolutePath() + myPid(), manager);
-        }
-        return manager;
+        return get(cacheDir, max_zise, max_count, ENGINE_FILE);
+    }
+
+    /**
+     * @param engine 存储引擎，只在该目录第一次创建实例时生效
+     */
+    public static CacheUtil get(File cacheDir, long max_zise, int max_count, @Engine int engine) {
+        return new Builder(cacheDir)
+                .maxSize(max_zise)
+                .maxCount(max_count)
+                .engine(engine)
+                .build();
     }
 
     private static String myPid() {
         return "_" + android.os.Process.myPid();
     }
 
-    private CacheUtil(File cacheDir, long max_size, int max_count) {
+    private CacheUtil(Builder builder) {
+        File cacheDir = builder.cacheDir;
         if (!cacheDir.exists() && !cacheDir.mkdirs()) {
             throw new RuntimeException("can't make dirs in "
                     + cacheDir.getAbsolutePath());
         }
-        mCacheManager = new CacheManager(cacheDir, max_size, max_count);
+        if (builder.multiProcess && builder.engine != ENGINE_FILE) {
+            throw new IllegalArgumentException("multiProcess only supports ENGINE_FILE");
+        }
+        mMaxSize = builder.maxSize;
+        mCodec = builder.codec;
+        mCompressMinSize = builder.compressMinSize;
+        mBitmapFormat = builder.bitmapFormat;
+        mBitmapQuality = builder.bitmapQuality;
+        // 先于存储引擎创建，多进程模式下引擎加载期间就可能让内存中的数据失效
+        mMemoryCache = new MemoryCache<Object>(builder.memoryCacheSize) {
+            @Override
+            protected int sizeOf(Object value) {
+                if (value instanceof String) {
+                    return ((String) value).length() * 2;
+                }
+                return ((byte[]) value).length;
+            }
+        };
+        mBitmapMemoryCache = new MemoryCache<Bitmap>(builder.bitmapMemoryCacheSize) {
+            @Override
+            protected int sizeOf(Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        EvictionPolicy<String> evictionPolicy = newEvictionPolicy(builder.eviction);
+        if (builder.engine == ENGINE_JOURNAL) {
+            mStore = new JournalCacheStore(cacheDir, builder.maxSize, builder.maxCount,
+                    evictionPolicy, mStats);
+        } else {
+            mStore = new CacheManager(cacheDir, builder.maxSize, builder.maxCount,
+                    builder.directoryLevels, builder.multiProcess, evictionPolicy);
+        }
+        if (builder.writeBehindDelay > 0) {
+            mWriteBehindStore = new WriteBehindStore(mStore, builder.writeBehindDelay,
+                    builder.writeBehindMaxPending);
+            mStore = mWriteBehindStore;
+        }
+        if (builder.sweepInterval > 0) {
+            mSweeper = new ExpirySweeper(mStore, builder.sweepInterval, builder.sweepMaxCount);
+            mSweeper.start();
+        }
+    }
+
+    private static EvictionPolicy<String> newEvictionPolicy(@Eviction int eviction) {
+        switch (eviction) {
+            case EVICTION_LFU:
+                return EvictionPolicies.lfu();
+            case EVICTION_SIZE:
+                return EvictionPolicies.size();
+            case EVICTION_TTL:
+                return EvictionPolicies.ttl();
+            default:
+                return EvictionPolicies.lru();
+        }
+    }
+
+    /**
+     * 缓存配置
+     */
+    public static class Builder {
+        private File cacheDir;
+        private long maxSize = MAX_SIZE;
+        private int maxCount = MAX_COUNT;
+        private int engine = ENGINE_FILE;
+        private int eviction = EVICTION_LRU;
+        private long memoryCacheSize;
+        private long bitmapMemoryCacheSize;
+        private long writeBehindDelay;
+        private long writeBehindMaxPending;
+        private int directoryLevels = DIRECTORY_LEVELS;
+        private boolean multiProcess;
+        private Codec codec;
+        private int compressMinSize;
+        private Bitmap.CompressFormat bitmapFormat = Bitmap.CompressFormat.PNG;
+        private int bitmapQuality = 100;
+        private long sweepInterval = SWEEP_INTERVAL;
+        private int sweepMaxCount = SWEEP_MAX_COUNT;
+
+        public Builder(Context ctx, String cacheName) {
+            this(new File(ctx.getCacheDir(), cacheName));
+        }
+
+        public Builder(File cacheDir) {
+            this.cacheDir = cacheDir;
+        }
+
+        /**
+         * @param maxSize 缓存的最大字节数
+         */
+        public Builder maxSize(long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param maxCount 缓存的最大条目数
+         */
+        public Builder maxCount(int maxCount) {
+            this.maxCount = maxCount;
+            return this;
+        }
+
+        /**
+         * @param engine 存储引擎 {@link #ENGINE_FILE} 或 {@link #ENGINE_JOURNAL}
+         */
+        public Builder engine(@Engine int engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * @param eviction 淘汰策略，默认 {@link #EVICTION_LRU}
+         */
+        public Builder eviction(@Eviction int eviction) {
+            this.eviction = eviction;
+            return this;
+        }
+
+        /**
+         * @param memoryCacheSize String、JSON、byte 数据的内存缓存字节数，默认 0 不缓存
+         */
+        public Builder memoryCacheSize(long memoryCacheSize) {
+            this.memoryCacheSize = memoryCacheSize;
+            return this;
+        }
+
+        /**
+         * @param bitmapMemoryCacheSize 解码后 Bitmap 的内存缓存字节数，默认 0 不缓存
+         */
+        public Builder bitmapMemoryCacheSize(long bitmapMemoryCacheSize) {
+            this.bitmapMemoryCacheSize = bitmapMemoryCacheSize;
+            return this;
+        }
+
+        /**
+         * 开启写后模式，见 {@link #writeBehind(long, long)}，最多等待 1 秒或累积 1 mb 后落盘
+         */
+        public Builder writeBehind() {
+            return writeBehind(WRITE_BEHIND_DELAY, WRITE_BEHIND_MAX_PENDING);
+        }
+
+        /**
+         * 开启写后模式
+         * <p>写入先放进内存队列，同一个 key 的多次写入会合并，由后台线程批量落盘，调用线程不做磁盘写入。
+         * 退出前可以调用 {@link CacheUtil#awaitFlushed(long, TimeUnit)} 保证数据落盘。</p>
+         *
+         * @param delayMillis     第一次写入后最多等待多久落盘
+         * @param maxPendingBytes 待写数据超过该字节数时立即落盘
+         */
+        public Builder writeBehind(long delayMillis, long maxPendingBytes) {
+            this.writeBehindDelay = delayMillis;
+            this.writeBehindMaxPending = maxPendingBytes;
+            return this;
+        }
+
+        /**
+         * 文件引擎按 key 摘要分目录存放，避免单个目录中的文件过多
+         *
+         * @param directoryLevels 子目录层数 0-2，每层最多 256 个目录，默认 1
+         */
+        public Builder directoryLevels(int directoryLevels) {
+            if (directoryLevels < 0 || directoryLevels > 2) {
+                throw new IllegalArgumentException("directoryLevels must be 0-2: " + directoryLevels);
+            }
+            this.directoryLevels = directoryLevels;
+            return this;
+        }
+
+        /**
+         * 开启多进程模式，多个进程可以同时使用同一个缓存目录，只支持 {@link #ENGINE_FILE}
+         * <p>各进程通过带文件锁的清单共享大小统计和淘汰，不需要各自扫描目录；
+         * 其他进程修改或移除数据后，本进程内存中的对应数据失效，并回调
+         * {@link CacheUtil#setOnChangeListener(OnChangeListener)}。</p>
+         */
+        public Builder multiProcess() {
+            this.multiProcess = true;
+            return this;
+        }
+
+        /**
+         * String、JSON 和 Serializable 数据用 codec 编码后落盘，例如 {@link Codecs#deflate()}
+         * <p>编码方式记录在每条数据的头部，读取时自动解码。编码后没有变小的数据按原样保存。</p>
+         *
+         * @param codec   编码方式，会被注册到 {@link Codecs}
+         * @param minSize 数据达到该字节数才编码
+         */
+        public Builder compress(Codec codec, int minSize) {
+            Codecs.register(codec);
+            this.codec = codec;
+            this.compressMinSize = minSize;
+            return this;
+        }
+
+        /**
+         * 保存 Bitmap 时的图片格式和质量，默认 PNG、100。读取时自动识别格式
+         *
+         * @param quality 0-100，PNG 忽略该参数
+         */
+        public Builder bitmapFormat(Bitmap.CompressFormat format, int quality) {
+            this.bitmapFormat = format;
+            this.bitmapQuality = quality;
+            return this;
+        }
+
+        /**
+         * 后台定期清理已过期的数据，默认每分钟一轮、每轮最多 100 条
+         * <p>已过期的数据不再等到读取时才移除，不会占用容量而导致有效的数据被淘汰。</p>
+         *
+         * @param intervalMillis 没有已过期数据时两轮之间的间隔，0 表示不清理
+         * @param maxCount       每轮最多移除的条目数
+         */
+        public Builder sweepExpired(long intervalMillis, int maxCount) {
+            if (intervalMillis > 0 && maxCount <= 0) {
+                throw new IllegalArgumentException("maxCount must be positive: " + maxCount);
+            }
+            this.sweepInterval = intervalMillis;
+            this.sweepMaxCount = maxCount;
+            return this;
+        }
+
+        /**
+         * 获取该目录对应的缓存实例，已存在时直接返回，配置不会重新生效
+         */
+        public CacheUtil build() {
+            String key = cacheDir.getAbsolutePath() + myPid();
+            synchronized (mInstanceMap) {
+                CacheUtil manager = mInstanceMap.get(key);
+                if (manager == null) {
+                    manager = new CacheUtil(this);
+                    mInstanceMap.put(key, manager);
+                }
+                return manager;
+            }
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -93,24 +456,7 @@ public class CacheUtil {
      * @param value 保存的String数据
      */
     public void put(String key, String value) {
-        File file = mCacheManager.newFile(key);
-        BufferedWriter out = null;
-        try {
-            out = new BufferedWriter(new FileWriter(file), 1024);
-            out.write(value);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (out != null) {
-                try {
-                    out.flush();
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            mCacheManager.put(file);
-        }
+        put(key, value, EntryHeader.NO_TTL);
     }
 
     /**
@@ -121,7 +467,8 @@ public class CacheUtil {
      * @param saveTime 保存的时间，单位：秒
      */
     public void put(String key, String value, int saveTime) {
-        put(key, Utils.newStringWithDateInfo(saveTime, value));
+        long expireAt = write(key, value.getBytes(UTF_8), saveTime, true);
+        mMemoryCache.put(key, value, expireAt);
     }
 
     /**
@@ -131,38 +478,20 @@ public class CacheUtil {
      * @return String 数据
      */
     public String getAsString(String key) {
-        File file = mCacheManager.get(key);
-        if (!file.exists())
-            return null;
-        boolean removeFile = false;
-        BufferedReader in = null;
-        try {
-            in = new BufferedReader(new FileReader(file));
-            String readString = "";
-            String currentLine;
-            while ((currentLine = in.readLine()) != null) {
-                readString += currentLine;
-            }
-            if (!Utils.isDue(readString)) {
-                return Utils.clearDateInfo(readString);
-            } else {
-                removeFile = true;
-                return null;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        Object cached = mMemoryCache.get(key);
+        if (cached instanceof String) {
+            return (String) cached;
+        } else if (cached != null) {
+            return new String((byte[]) cached, UTF_8);
+        }
+        CacheEntry entry = read(key);
+        if (entry == null)
             return null;
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (removeFile)
-                remove(key);
+        String value = new String(entry.payload, UTF_8);
+        if (!entry.header.hasStaleWindow()) {
+            mMemoryCache.put(key, value, entry.header.expireAt());
         }
+        return value;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -260,24 +589,7 @@ public class CacheUtil {
      * @param value 保存的数据
      */
     public void put(String key, byte[] value) {
-        File file = mCacheManager.newFile(key);
-        FileOutputStream out = null;
-        try {
-            out = new FileOutputStream(file);
-            out.write(value);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (out != null) {
-                try {
-                    out.flush();
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            mCacheManager.put(file);
-        }
+        put(key, value, EntryHeader.NO_TTL);
     }
 
     /**
@@ -288,7 +600,8 @@ public class CacheUtil {
      * @param saveTime 保存的时间，单位：秒
      */
     public void put(String key, byte[] value, int saveTime) {
-        put(key, Utils.newByteArrayWithDateInfo(saveTime, value));
+        // 写后模式下数据稍后才落盘，不能引用调用方之后可能修改的数组
+        write(key, mWriteBehindStore != null ? value.clone() : value, saveTime, false);
     }
 
     /**
@@ -298,481 +611,2099 @@ public class CacheUtil {
      * @return byte 数据
      */
     public byte[] getAsBinary(String key) {
-        RandomAccessFile RAFile = null;
-        boolean removeFile = false;
-        try {
-            File file = mCacheManager.get(key);
-            if (!file.exists())
-                return null;
-            RAFile = new RandomAccessFile(file, "r");
-            byte[] byteArray = new byte[(int) RAFile.length()];
-            RAFile.read(byteArray);
-            if (!Utils.isDue(byteArray)) {
-                return Utils.clearDateInfo(byteArray);
-            } else {
-                removeFile = true;
-                return null;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        Object cached = mMemoryCache.get(key);
+        if (cached instanceof byte[]) {
+            return ((byte[]) cached).clone();
+        } else if (cached != null) {
+            return ((String) cached).getBytes(UTF_8);
+        }
+        CacheEntry entry = read(key);
+        if (entry == null)
             return null;
-        } finally {
-            if (RAFile != null) {
-                try {
-                    RAFile.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (removeFile)
-                remove(key);
+        if (mMemoryCache.isEnabled() && !entry.header.hasStaleWindow()) {
+            mMemoryCache.put(key, entry.payload.clone(), entry.header.expireAt());
         }
+        return entry.payload;
     }
 
-    ///////////////////////////////////////////////////////////////////////////
-    // 序列化 数据 读写
-    ///////////////////////////////////////////////////////////////////////////
-
     /**
-     * 保存 Serializable数据 到 缓存中
+     * 以只读 ByteBuffer 获取 byte 数据，适合反复读取的较大数据
+     * <p>数据在磁盘上时直接映射文件（或段文件）中内容所在的区域，不复制到 Java 堆，
+     * 多次读取共享同一份系统页缓存。映射的内容不做校验，不会放入内存缓存。</p>
      *
-     * @param key   保存的key
-     * @param value 保存的value
+     * @param key
+     * @return 只读的 byte 数据，不存在或已过期时返回 null
      */
-    public void put(String key, Serializable value) {
-        put(key, value, -1);
+    public ByteBuffer getAsByteBuffer(String key) {
+        Object cached = mMemoryCache.get(key);
+        if (cached instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) cached).asReadOnlyBuffer();
+        } else if (cached != null) {
+            return ByteBuffer.wrap(((String) cached).getBytes(UTF_8)).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = mStore.map(key);
+        if (buffer == null) {
+            mStats.recordMisses(1);
+        } else {
+            mStats.recordHits(1);
+        }
+        return buffer;
     }
 
     /**
-     * 保存 Serializable数据到 缓存中
+     * 写入磁盘，同时让内存中的旧数据失效
      *
-     * @param key      保存的key
-     * @param value    保存的value
-     * @param saveTime 保存的时间，单位：秒
+     * @param saveTime 保存的时间，单位：秒，{@link EntryHeader#NO_TTL} 表示永不过期
+     * @param encode   是否按配置的编码方式编码
+     * @return 过期的时间点（毫秒），0 表示永不过期
      */
-    public void put(String key, Serializable value, int saveTime) {
-        ByteArrayOutputStream baos = null;
-        ObjectOutputStream oos = null;
-        try {
-            baos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(baos);
-            oos.writeObject(value);
-            byte[] data = baos.toByteArray();
-            if (saveTime != -1) {
-                put(key, data, saveTime);
-            } else {
-                put(key, data);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                oos.close();
-            } catch (IOException e) {
-            }
+    private long write(String key, byte[] payload, int saveTime, boolean encode) {
+        return write(key, payload, saveTime, encode, 0);
+    }
+
+    /**
+     * @param flags 附加到头部的标记，见 {@link EntryHeader#FLAG_STALE}
+     */
+    private long write(String key, byte[] payload, int saveTime, boolean encode, int flags) {
+        mMemoryCache.remove(key);
+        mBitmapMemoryCache.remove(key);
+        CacheEntry entry = encode(payload, saveTime, encode);
+        if (flags != 0) {
+            entry = new CacheEntry(entry.header.withFlags(entry.header.flags | flags), entry.payload);
         }
+        long start = System.nanoTime();
+        mStore.put(key, entry.header, entry.payload);
+        mStats.recordPut(System.nanoTime() - start, entry.header.entryLength());
+        return entry.header.expireAt();
     }
 
     /**
-     * 读取 Serializable数据
-     *
-     * @param key
-     * @return Serializable 数据
+     * 生成要写入磁盘的一条数据，编码后没有变小时保存原始内容
      */
-    public Object getAsObject(String key) {
-        byte[] data = getAsBinary(key);
-        if (data != null) {
-            ByteArrayInputStream bais = null;
-            ObjectInputStream ois = null;
+    private CacheEntry encode(byte[] payload, int saveTime, boolean encode) {
+        int codecId = 0;
+        if (encode && mCodec != null && payload.length >= mCompressMinSize) {
             try {
-                bais = new ByteArrayInputStream(data);
-                ois = new ObjectInputStream(bais);
-                Object reObject = ois.readObject();
-                return reObject;
-            } catch (Exception e) {
-                e.printStackTrace();
-                return null;
-            } finally {
-                try {
-                    if (bais != null)
-                        bais.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                try {
-                    if (ois != null)
-                        ois.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                byte[] encoded = mCodec.encode(payload);
+                if (encoded.length < payload.length) {
+                    payload = encoded;
+                    codecId = mCodec.id();
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
-        return null;
-
+        return new CacheEntry(EntryHeader.create(payload, saveTime, codecId), payload);
     }
 
-    ///////////////////////////////////////////////////////////////////////////
-    // bitmap 数据 读写
-    ///////////////////////////////////////////////////////////////////////////
-
     /**
-     * 保存 bitmap 到 缓存中
-     *
-     * @param key   保存的key
-     * @param value 保存的bitmap数据
+     * 从磁盘读取数据并解码，已过期的数据会被移除
      */
-    public void put(String key, Bitmap value) {
-        put(key, Utils.Bitmap2Bytes(value));
+    private CacheEntry read(String key) {
+        long start = System.nanoTime();
+        CacheEntry entry = mStore.get(key);
+        mStats.recordLoad(System.nanoTime() - start);
+        if (entry != null && entry.isExpired()) {
+            mStats.recordMisses(1);
+            expire(Collections.singletonMap(key, entry));
+            return null;
+        }
+        return decode(entry);
     }
 
     /**
-     * 保存 bitmap 到 缓存中
+     * 从磁盘批量读取数据并解码，已过期的数据一次移除
      *
-     * @param key      保存的key
-     * @param value    保存的 bitmap 数据
-     * @param saveTime 保存的时间，单位：秒
+     * @return key → 数据，不存在、已过期或无法解码的 key 不在其中
      */
-    public void put(String key, Bitmap value, int saveTime) {
-        put(key, Utils.Bitmap2Bytes(value), saveTime);
+    private Map<String, CacheEntry> readAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        Map<String, CacheEntry> entries = mStore.getAll(keys);
+        mStats.recordLoad(System.nanoTime() - start);
+        mStats.recordMisses(keys.size() - entries.size());
+        Map<String, CacheEntry> expired = new HashMap<>();
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> entry = iterator.next();
+            if (entry.getValue().isExpired()) {
+                mStats.recordMisses(1);
+                expired.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+                continue;
+            }
+            CacheEntry value = decode(entry.getValue());
+            if (value == null) {
+                iterator.remove();
+            } else {
+                entry.setValue(value);
+            }
+        }
+        if (!expired.isEmpty()) {
+            expire(expired);
+        }
+        return entries;
     }
 
     /**
-     * 读取 bitmap 数据
-     *
-     * @param key
-     * @return bitmap 数据
+     * 移除读取时发现已过期的数据
      */
-    public Bitmap getAsBitmap(String key) {
-        if (getAsBinary(key) == null) {
-            return null;
+    private void expire(Map<String, CacheEntry> expired) {
+        for (Map.Entry<String, CacheEntry> entry : expired.entrySet()) {
+            mMemoryCache.remove(entry.getKey());
+            mBitmapMemoryCache.remove(entry.getKey());
+            mStats.recordRemoval(CacheStats.CAUSE_EXPIRED, entry.getValue().header.entryLength());
         }
-        return Utils.Bytes2Bimap(getAsBinary(key));
+        mStore.removeAll(expired.keySet());
     }
 
-    ///////////////////////////////////////////////////////////////////////////
-    // drawable 数据 读写
-    ///////////////////////////////////////////////////////////////////////////
+    /**
+     * 解码一条未过期的数据并记录命中情况
+     */
+    private CacheEntry decode(CacheEntry entry) {
+        if (entry == null) {
+            mStats.recordMisses(1);
+            return null;
+        }
+        if (entry.header.codecId() != 0) {
+            byte[] payload = Codecs.decode(entry.header, entry.payload);
+            if (payload == null) {
+                mStats.recordMisses(1);
+                return null;
+            }
+            entry = entry.withPayload(payload);
+        }
+        mStats.recordHits(1);
+        return entry;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 批量 读写
+    ///////////////////////////////////////////////////////////////////////////
 
     /**
-     * 保存 drawable 到 缓存中
+     * 批量保存 String数据 到 缓存中，磁盘上一次批量写入
      *
-     * @param key   保存的key
-     * @param value 保存的drawable数据
+     * @param values key → 保存的String数据
      */
-    public void put(String key, Drawable value) {
-        put(key, Utils.drawable2Bitmap(value));
+    public void putAll(Map<String, String> values) {
+        putAll(values, EntryHeader.NO_TTL);
     }
 
     /**
-     * 保存 drawable 到 缓存中
+     * 批量保存 String数据 到 缓存中，磁盘上一次批量写入
      *
-     * @param key      保存的key
-     * @param value    保存的 drawable 数据
+     * @param values   key → 保存的String数据
      * @param saveTime 保存的时间，单位：秒
      */
-    public void put(String key, Drawable value, int saveTime) {
-        put(key, Utils.drawable2Bitmap(value), saveTime);
+    public void putAll(Map<String, String> values, int saveTime) {
+        Map<String, CacheEntry> entries = new LinkedHashMap<>();
+        long bytes = 0;
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            mMemoryCache.remove(value.getKey());
+            mBitmapMemoryCache.remove(value.getKey());
+            CacheEntry entry = encode(value.getValue().getBytes(UTF_8), saveTime, true);
+            entries.put(value.getKey(), entry);
+            bytes += entry.header.entryLength();
+        }
+        long start = System.nanoTime();
+        mStore.putAll(entries);
+        mStats.recordPut(System.nanoTime() - start, bytes);
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            mMemoryCache.put(value.getKey(), value.getValue(),
+                    entries.get(value.getKey()).header.expireAt());
+        }
     }
 
     /**
-     * 读取 Drawable 数据
+     * 批量读取 String数据，内存中没有的 key 从磁盘上一次批量读取
      *
-     * @param key
-     * @return Drawable 数据
+     * @param keys 保存的key
+     * @return key → String 数据，不存在或已过期的 key 不在其中
      */
-    public Drawable getAsDrawable(String key) {
-        if (getAsBinary(key) == null) {
-            return null;
+    public Map<String, String> getAllAsString(Collection<String> keys) {
+        Map<String, String> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Object cached = mMemoryCache.get(key);
+            if (cached instanceof String) {
+                result.put(key, (String) cached);
+            } else if (cached != null) {
+                result.put(key, new String((byte[]) cached, UTF_8));
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, CacheEntry> entry : readAll(missing).entrySet()) {
+                String value = new String(entry.getValue().payload, UTF_8);
+                if (!entry.getValue().header.hasStaleWindow()) {
+                    mMemoryCache.put(entry.getKey(), value, entry.getValue().header.expireAt());
+                }
+                result.put(entry.getKey(), value);
+            }
         }
-        return Utils.bitmap2Drawable(Utils.Bytes2Bimap(getAsBinary(key)));
+        return result;
     }
 
     /**
-     * 获取缓存文件
+     * 批量读取 byte 数据，内存中没有的 key 从磁盘上一次批量读取
      *
-     * @param key
-     * @return value 缓存的文件
+     * @param keys 保存的key
+     * @return key → byte 数据，不存在或已过期的 key 不在其中
      */
-    public File file(String key) {
-        File f = mCacheManager.newFile(key);
-        if (f.exists())
-            return f;
-        return null;
+    public Map<String, byte[]> getAllAsBinary(Collection<String> keys) {
+        Map<String, byte[]> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Object cached = mMemoryCache.get(key);
+            if (cached instanceof byte[]) {
+                result.put(key, ((byte[]) cached).clone());
+            } else if (cached != null) {
+                result.put(key, ((String) cached).getBytes(UTF_8));
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, CacheEntry> entry : readAll(missing).entrySet()) {
+                byte[] payload = entry.getValue().payload;
+                if (mMemoryCache.isEnabled() && !entry.getValue().header.hasStaleWindow()) {
+                    mMemoryCache.put(entry.getKey(), payload.clone(), entry.getValue().header.expireAt());
+                }
+                result.put(entry.getKey(), payload);
+            }
+        }
+        return result;
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // 读取或加载
+    ///////////////////////////////////////////////////////////////////////////
+
     /**
-     * 移除某个key
+     * 缓存中没有数据时加载数据
      *
-     * @param key
-     * @return 是否移除成功
+     * @param <V> 数据类型
      */
-    public boolean remove(String key) {
-        return mCacheManager.remove(key);
+    public interface Loader<V> {
+        /**
+         * 加载数据，例如请求网络
+         *
+         * @return 数据，为 null 时不保存
+         */
+        V load(String key) throws Exception;
     }
 
     /**
-     * 清除所有数据
+     * 读取 String数据，缓存中没有时用 loader 加载并保存，见 {@link #getAsString(String, int, int, Loader)}
      */
-    public void clear() {
-        mCacheManager.clear();
+    public String getAsString(String key, int saveTime, Loader<String> loader) {
+        return getAsString(key, saveTime, 0, loader);
     }
 
     /**
-     *缓存管理器
+     * 读取 String数据，缓存中没有时用 loader 加载并保存
+     * <p>同一个 key 同时只有一个 loader 在执行，其他调用方等待它的结果，不会重复加载和写入。</p>
+     * <p>数据保存超过 saveTime 之后的 staleTime 内仍然保留在磁盘上：这期间读取会立即返回旧数据，
+     * 同时在后台重新加载。</p>
+     *
+     * @param saveTime  数据保持新鲜的时间，单位：秒，{@link EntryHeader#NO_TTL} 表示永不过期
+     * @param staleTime 超过 saveTime 之后还可以返回旧数据的时间，单位：秒
+     * @param loader    缓存中没有时在调用线程上执行，重新加载时在后台线程执行；
+     *                  loader 中不能再加载同一个 key，否则这次加载失败
+     * @return String 数据，加载失败时返回 null
      */
-    public class CacheManager {
-        private final AtomicLong cacheSize;
-        private final AtomicInteger cacheCount;
-        private final long sizeLimit;
-        private final int countLimit;
-        private final Map<File, Long> lastUsageDates = Collections
-                .synchronizedMap(new HashMap<File, Long>());
-        protected File cacheDir;
+    public String getAsString(String key, int saveTime, int staleTime, Loader<String> loader) {
+        return getOrLoad(key, saveTime, staleTime, loader, STRING);
+    }
 
-        private CacheManager(File cacheDir, long sizeLimit, int countLimit) {
-            this.cacheDir = cacheDir;
-            this.sizeLimit = sizeLimit;
-            this.countLimit = countLimit;
-            cacheSize = new AtomicLong();
-            cacheCount = new AtomicInteger();
-            calculateCacheSizeAndCacheCount();
+    /**
+     * 读取 byte 数据，缓存中没有时用 loader 加载并保存，见 {@link #getAsString(String, int, int, Loader)}
+     */
+    public byte[] getAsBinary(String key, int saveTime, Loader<byte[]> loader) {
+        return getAsBinary(key, saveTime, 0, loader);
+    }
+
+    /**
+     * 读取 byte 数据，缓存中没有时用 loader 加载并保存，见 {@link #getAsString(String, int, int, Loader)}
+     */
+    public byte[] getAsBinary(String key, int saveTime, int staleTime, Loader<byte[]> loader) {
+        return getOrLoad(key, saveTime, staleTime, loader, BINARY);
+    }
+
+    private <V> V getOrLoad(String key, int saveTime, int staleTime,
+                            Loader<V> loader, ValueType<V> type) {
+        Object cached = mMemoryCache.get(key);
+        if (cached != null) {
+            return type.fromMemory(cached);
+        }
+        CacheEntry entry = read(key);
+        if (entry != null) {
+            V value = type.fromBytes(entry.payload);
+            long freshUntil = saveTime < 0 ? 0 : entry.header.createdAt + saveTime * 1000L;
+            if (freshUntil == 0 || System.currentTimeMillis() < freshUntil) {
+                if (mMemoryCache.isEnabled()) {
+                    mMemoryCache.put(key, type.toMemory(value), freshUntil);
+                }
+                return value;
+            }
+            // 已不新鲜但还没有过期：返回旧数据，后台重新加载
+            FutureTask<V> refresh = newLoad(key, saveTime, staleTime, loader, type);
+            if (refresh != null) {
+                loaderExecutor().execute(refresh);
+            }
+            return value;
+        }
+        FutureTask<V> load = newLoad(key, saveTime, staleTime, loader, type);
+        if (load != null) {
+            load.run();
+        } else {
+            load = ongoingLoad(key);
+            if (load == null) {
+                // 刚好加载完成，重新从缓存读取
+                return getOrLoad(key, saveTime, staleTime, loader, type);
+            }
+            if (mLoadingKeys.get().contains(key)) {
+                // 等待的正是当前线程上的加载任务，会一直等下去
+                throw new IllegalStateException("recursive load of key: " + key);
+            }
+        }
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
         }
+    }
 
-        /**
-         * 计算 cacheSize和cacheCount
-         */
-        private void calculateCacheSizeAndCacheCount() {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    int size = 0;
-                    int count = 0;
-                    File[] cachedFiles = cacheDir.listFiles();
-                    if (cachedFiles != null) {
-                        for (File cachedFile : cachedFiles) {
-                            size += calculateSize(cachedFile);
-                            count += 1;
-                            lastUsageDates.put(cachedFile,
-                                    cachedFile.lastModified());
-                        }
-                        cacheSize.set(size);
-                        cacheCount.set(count);
+    /**
+     * 创建 key 的加载任务，已有任务在执行时返回 null
+     */
+    private <V> FutureTask<V> newLoad(final String key, final int saveTime, final int staleTime,
+                                      final Loader<V> loader, final ValueType<V> type) {
+        FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                Set<String> loading = mLoadingKeys.get();
+                loading.add(key);
+                V value;
+                try {
+                    value = loader.load(key);
+                } finally {
+                    loading.remove(key);
+                }
+                if (value != null) {
+                    int ttl = saveTime < 0 ? EntryHeader.NO_TTL : saveTime + staleTime;
+                    byte[] payload = type.toBytes(value);
+                    // 写后模式下数据稍后才落盘，不能引用返回给调用方的数组
+                    if (type == BINARY && mWriteBehindStore != null) {
+                        payload = payload.clone();
+                    }
+                    // 过期时间包含返回旧数据的部分，普通读取不能按过期时间放入内存缓存
+                    int flags = saveTime >= 0 && staleTime > 0 ? EntryHeader.FLAG_STALE : 0;
+                    long expireAt = write(key, payload, ttl, type.encode, flags);
+                    if (mMemoryCache.isEnabled()) {
+                        long freshUntil = saveTime < 0 ? expireAt
+                                : System.currentTimeMillis() + saveTime * 1000L;
+                        mMemoryCache.put(key, type.toMemory(value), freshUntil);
                     }
                 }
-            }).start();
-        }
+                return value;
+            }
+        }) {
+            @Override
+            protected void done() {
+                mLoads.remove(key, this);
+            }
+        };
+        return mLoads.putIfAbsent(key, task) == null ? task : null;
+    }
 
-        private void put(File file) {
-            int curCacheCount = cacheCount.get();
-            while (curCacheCount + 1 > countLimit) {
-                long freedSize = removeNext();
-                cacheSize.addAndGet(-freedSize);
+    /**
+     * 同一个 key 只会有一种数据类型的加载任务
+     */
+    @SuppressWarnings("unchecked")
+    private <V> FutureTask<V> ongoingLoad(String key) {
+        return (FutureTask<V>) mLoads.get(key);
+    }
 
-                curCacheCount = cacheCount.addAndGet(-1);
-            }
-            cacheCount.addAndGet(1);
+    private static synchronized ExecutorService loaderExecutor() {
+        if (sLoaderExecutor == null) {
+            sLoaderExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CacheUtil-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sLoaderExecutor;
+    }
 
-            long valueSize = calculateSize(file);
-            long curCacheSize = cacheSize.get();
-            while (curCacheSize + valueSize > sizeLimit) {
-                long freedSize = removeNext();
-                curCacheSize = cacheSize.addAndGet(-freedSize);
-            }
-            cacheSize.addAndGet(valueSize);
+    /**
+     * 数据在磁盘和内存缓存中的存放形式
+     */
+    private abstract static class ValueType<V> {
+        // 是否按配置的编码方式编码
+        final boolean encode;
 
-            Long currentTime = System.currentTimeMillis();
-            file.setLastModified(currentTime);
-            lastUsageDates.put(file, currentTime);
+        ValueType(boolean encode) {
+            this.encode = encode;
         }
 
-        private File get(String key) {
-            File file = newFile(key);
-            Long currentTime = System.currentTimeMillis();
-            file.setLastModified(currentTime);
-            lastUsageDates.put(file, currentTime);
+        abstract V fromBytes(byte[] bytes);
+
+        abstract byte[] toBytes(V value);
+
+        abstract V fromMemory(Object cached);
 
-            return file;
+        abstract Object toMemory(V value);
+    }
+
+    private static final ValueType<String> STRING = new ValueType<String>(true) {
+        @Override
+        String fromBytes(byte[] bytes) {
+            return new String(bytes, UTF_8);
         }
 
-        private File newFile(String key) {
-            return new File(cacheDir, key.hashCode() + "");
+        @Override
+        byte[] toBytes(String value) {
+            return value.getBytes(UTF_8);
         }
 
-        private boolean remove(String key) {
-            File image = get(key);
-            return image.delete();
+        @Override
+        String fromMemory(Object cached) {
+            return cached instanceof String ? (String) cached : new String((byte[]) cached, UTF_8);
         }
 
-        private void clear() {
-            lastUsageDates.clear();
-            cacheSize.set(0);
-            File[] files = cacheDir.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    f.delete();
-                }
-            }
+        @Override
+        Object toMemory(String value) {
+            return value;
         }
+    };
 
-        /**
-         * 移除旧的文件
-         *
-         * @return
-         */
-        private long removeNext() {
-            if (lastUsageDates.isEmpty()) {
-                return 0;
-            }
+    private static final ValueType<byte[]> BINARY = new ValueType<byte[]>(false) {
+        @Override
+        byte[] fromBytes(byte[] bytes) {
+            return bytes;
+        }
 
-            Long oldestUsage = null;
-            File mostLongUsedFile = null;
-            Set<Map.Entry<File, Long>> entries = lastUsageDates.entrySet();
-            synchronized (lastUsageDates) {
-                for (Map.Entry<File, Long> entry : entries) {
-                    if (mostLongUsedFile == null) {
-                        mostLongUsedFile = entry.getKey();
-                        oldestUsage = entry.getValue();
-                    } else {
-                        Long lastValueUsage = entry.getValue();
-                        if (lastValueUsage < oldestUsage) {
-                            oldestUsage = lastValueUsage;
-                            mostLongUsedFile = entry.getKey();
-                        }
-                    }
-                }
-            }
+        @Override
+        byte[] toBytes(byte[] value) {
+            return value;
+        }
 
-            long fileSize = calculateSize(mostLongUsedFile);
-            if (mostLongUsedFile.delete()) {
-                lastUsageDates.remove(mostLongUsedFile);
-            }
-            return fileSize;
+        @Override
+        byte[] fromMemory(Object cached) {
+            return cached instanceof byte[] ? ((byte[]) cached).clone() : ((String) cached).getBytes(UTF_8);
         }
 
-        private long calculateSize(File file) {
-            return file.length();
+        @Override
+        Object toMemory(byte[] value) {
+            return value.clone();
         }
-    }
+    };
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 流式 读写
+    ///////////////////////////////////////////////////////////////////////////
 
     /**
-     * 时间计算工具类
+     * 打开写入数据的输出流，适合较大的数据，不需要先拼成 byte[]
+     * <p>写入的内容在 {@link CacheOutputStream#close()} 时一次提交，提交之前读取到的仍是旧数据；
+     * 调用 {@link CacheOutputStream#abort()} 放弃写入。</p>
+     *
+     * @param key 保存的key
+     * @return 输出流，打开失败时返回 null
      */
-    private static class Utils {
+    public CacheOutputStream openOutputStream(String key) {
+        return openOutputStream(key, EntryHeader.NO_TTL);
+    }
 
-        /**
-         * 判断缓存的String数据是否到期
-         *
-         * @param str
-         * @return true：到期了 false：还没有到期
-         */
-        private static boolean isDue(String str) {
-            return isDue(str.getBytes());
+    /**
+     * 打开写入数据的输出流，见 {@link #openOutputStream(String)}
+     *
+     * @param key      保存的key
+     * @param saveTime 保存的时间，单位：秒
+     * @return 输出流，打开失败时返回 null
+     */
+    public CacheOutputStream openOutputStream(final String key, int saveTime) {
+        final CacheOutputStream out = mStore.openOutputStream(key, saveTime);
+        if (out == null) {
+            return null;
         }
-
-        /**
-         * 判断缓存的byte数据是否到期
-         *
-         * @param data
-         * @return true：到期了 false：还没有到期
-         */
-        private static boolean isDue(byte[] data) {
-            String[] strs = getDateInfoFromDate(data);
-            if (strs != null && strs.length == 2) {
-                String saveTimeStr = strs[0];
-                while (saveTimeStr.startsWith("0")) {
-                    saveTimeStr = saveTimeStr
-                            .substring(1, saveTimeStr.length());
-                }
-                long saveTime = Long.valueOf(saveTimeStr);
-                long deleteAfter = Long.valueOf(strs[1]);
-                if (System.currentTimeMillis() > saveTime + deleteAfter * 1000) {
-                    return true;
-                }
+        return new CacheOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
             }
-            return false;
-        }
 
-        private static String newStringWithDateInfo(int second, String strInfo) {
-            return createDateInfo(second) + strInfo;
-        }
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
 
-        private static byte[] newByteArrayWithDateInfo(int second, byte[] data2) {
-            byte[] data1 = createDateInfo(second).getBytes();
-            byte[] retdata = new byte[data1.length + data2.length];
-            System.arraycopy(data1, 0, retdata, 0, data1.length);
-            System.arraycopy(data2, 0, retdata, data1.length, data2.length);
-            return retdata;
-        }
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
 
-        private static String clearDateInfo(String strInfo) {
-            if (strInfo != null && hasDateInfo(strInfo.getBytes())) {
-                strInfo = strInfo.substring(strInfo.indexOf(mSeparator) + 1,
-                        strInfo.length());
+            @Override
+            public void close() throws IOException {
+                try {
+                    out.close();
+                } finally {
+                    // 提交之后内存中的旧数据失效
+                    mMemoryCache.remove(key);
+                    mBitmapMemoryCache.remove(key);
+                }
             }
-            return strInfo;
-        }
 
-        private static byte[] clearDateInfo(byte[] data) {
-            if (hasDateInfo(data)) {
-                return copyOfRange(data, indexOf(data, mSeparator) + 1,
-                        data.length);
+            @Override
+            public void abort() {
+                out.abort();
             }
-            return data;
-        }
+        };
+    }
 
-        private static boolean hasDateInfo(byte[] data) {
-            return data != null && data.length > 15 && data[13] == '-'
-                    && indexOf(data, mSeparator) > 14;
+    /**
+     * 打开读取数据的输入流，适合较大的数据，可以边读边解析，不需要一次读入内存
+     * <p>读到末尾时校验内容，损坏时抛出 IOException。打开之后数据被覆盖或移除不影响已打开的流。</p>
+     *
+     * @param key 保存的key
+     * @return 输入流，由调用方关闭；不存在或已过期时返回 null
+     */
+    public InputStream openInputStream(String key) {
+        Object cached = mMemoryCache.get(key);
+        if (cached instanceof byte[]) {
+            return new ByteArrayInputStream((byte[]) cached);
+        } else if (cached != null) {
+            return new ByteArrayInputStream(((String) cached).getBytes(UTF_8));
         }
+        InputStream in = mStore.openInputStream(key);
+        if (in == null) {
+            mStats.recordMisses(1);
+        } else {
+            mStats.recordHits(1);
+        }
+        return in;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // 序列化 数据 读写
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 保存 Serializable数据 到 缓存中
+     *
+     * @param key   保存的key
+     * @param value 保存的value
+     */
+    public void put(String key, Serializable value) {
+        put(key, value, EntryHeader.NO_TTL);
+    }
 
-        private static String[] getDateInfoFromDate(byte[] data) {
-            if (hasDateInfo(data)) {
-                String saveDate = new String(copyOfRange(data, 0, 13));
-                String deleteAfter = new String(copyOfRange(data, 14,
-                        indexOf(data, mSeparator)));
-                return new String[]{saveDate, deleteAfter};
+    /**
+     * 保存 Serializable数据到 缓存中
+     *
+     * @param key      保存的key
+     * @param value    保存的value
+     * @param saveTime 保存的时间，单位：秒
+     */
+    public void put(String key, Serializable value, int saveTime) {
+        ByteArrayOutputStream baos = null;
+        ObjectOutputStream oos = null;
+        try {
+            baos = new ByteArrayOutputStream();
+            oos = new ObjectOutputStream(baos);
+            oos.writeObject(value);
+            byte[] data = baos.toByteArray();
+            write(key, data, saveTime, true);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                oos.close();
+            } catch (IOException e) {
             }
-            return null;
         }
+    }
 
-        private static int indexOf(byte[] data, char c) {
-            for (int i = 0; i < data.length; i++) {
-                if (data[i] == c) {
-                    return i;
+    /**
+     * 读取 Serializable数据
+     *
+     * @param key
+     * @return Serializable 数据
+     */
+    public Object getAsObject(String key) {
+        byte[] data = getAsBinary(key);
+        if (data != null) {
+            ByteArrayInputStream bais = null;
+            ObjectInputStream ois = null;
+            try {
+                bais = new ByteArrayInputStream(data);
+                ois = new ObjectInputStream(bais);
+                Object reObject = ois.readObject();
+                return reObject;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                try {
+                    if (bais != null)
+                        bais.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                try {
+                    if (ois != null)
+                        ois.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
-            return -1;
         }
+        return null;
 
-        private static byte[] copyOfRange(byte[] original, int from, int to) {
-            int newLength = to - from;
-            if (newLength < 0)
-                throw new IllegalArgumentException(from + " > " + to);
-            byte[] copy = new byte[newLength];
-            System.arraycopy(original, from, copy, 0,
-                    Math.min(original.length - from, newLength));
-            return copy;
-        }
+    }
 
-        private static final char mSeparator = ' ';
+    ///////////////////////////////////////////////////////////////////////////
+    // bitmap 数据 读写
+    ///////////////////////////////////////////////////////////////////////////
 
-        private static String createDateInfo(int second) {
-            String currentTime = System.currentTimeMillis() + "";
-            while (currentTime.length() < 13) {
-                currentTime = "0" + currentTime;
-            }
-            return currentTime + "-" + second + mSeparator;
-        }
+    /**
+     * 保存 bitmap 到 缓存中
+     *
+     * @param key   保存的key
+     * @param value 保存的bitmap数据
+     */
+    public void put(String key, Bitmap value) {
+        put(key, value, EntryHeader.NO_TTL);
+    }
+
+    /**
+     * 保存 bitmap 到 缓存中
+     *
+     * @param key      保存的key
+     * @param value    保存的 bitmap 数据
+     * @param saveTime 保存的时间，单位：秒
+     */
+    public void put(String key, Bitmap value, int saveTime) {
+        long expireAt = write(key, Utils.Bitmap2Bytes(value, mBitmapFormat, mBitmapQuality), saveTime, false);
+        mBitmapMemoryCache.put(key, value, expireAt);
+    }
+
+    /**
+     * 读取 bitmap 数据
+     *
+     * @param key
+     * @return bitmap 数据
+     */
+    public Bitmap getAsBitmap(String key) {
+        Bitmap cached = mBitmapMemoryCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        CacheEntry entry = read(key);
+        if (entry == null) {
+            return null;
+        }
+        Bitmap bitmap = Utils.Bytes2Bimap(entry.payload);
+        mBitmapMemoryCache.put(key, bitmap, entry.header.expireAt());
+        return bitmap;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // drawable 数据 读写
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 保存 drawable 到 缓存中
+     *
+     * @param key   保存的key
+     * @param value 保存的drawable数据
+     */
+    public void put(String key, Drawable value) {
+        put(key, Utils.drawable2Bitmap(value));
+    }
+
+    /**
+     * 保存 drawable 到 缓存中
+     *
+     * @param key      保存的key
+     * @param value    保存的 drawable 数据
+     * @param saveTime 保存的时间，单位：秒
+     */
+    public void put(String key, Drawable value, int saveTime) {
+        put(key, Utils.drawable2Bitmap(value), saveTime);
+    }
+
+    /**
+     * 读取 Drawable 数据
+     *
+     * @param key
+     * @return Drawable 数据
+     */
+    public Drawable getAsDrawable(String key) {
+        return Utils.bitmap2Drawable(getAsBitmap(key));
+    }
+
+    /**
+     * 获取缓存文件
+     *
+     * @param key
+     * @return value 缓存的文件
+     */
+    public File file(String key) {
+        return mStore.file(key);
+    }
+
+    /**
+     * 移除某个key
+     *
+     * @param key
+     * @return 是否移除成功
+     */
+    public boolean remove(String key) {
+        mMemoryCache.remove(key);
+        mBitmapMemoryCache.remove(key);
+        boolean removed = mStore.remove(key);
+        if (removed) {
+            mStats.recordRemoval(CacheStats.CAUSE_EXPLICIT, 0);
+        }
+        return removed;
+    }
+
+    /**
+     * 批量移除，磁盘上一次批量移除
+     *
+     * @param keys 保存的key
+     * @return 移除的条目数
+     */
+    public int removeAll(Collection<String> keys) {
+        for (String key : keys) {
+            mMemoryCache.remove(key);
+            mBitmapMemoryCache.remove(key);
+        }
+        int removed = mStore.removeAll(keys);
+        for (int i = 0; i < removed; i++) {
+            mStats.recordRemoval(CacheStats.CAUSE_EXPLICIT, 0);
+        }
+        return removed;
+    }
+
+    /**
+     * 移除所有以 prefix 开头的key
+     *
+     * @param prefix key 的前缀
+     * @return 移除的条目数
+     */
+    public int removeByPrefix(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (String key : mStore.keys()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        return keys.isEmpty() ? 0 : removeAll(keys);
+    }
+
+    /**
+     * 遍历当前所有的key
+     * <p>遍历的是调用时的快照，之后的修改不会反映在其中；{@link Iterator#remove()} 移除对应的数据。
+     * 可能包含已过期但尚未清理的 key，旧版本写入的文件无法还原 key，不包含在内。</p>
+     */
+    public Iterator<String> keys() {
+        final Iterator<String> keys = mStore.keys().iterator();
+        return new Iterator<String>() {
+            private String current;
+
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public String next() {
+                current = keys.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                CacheUtil.this.remove(current);
+                current = null;
+            }
+        };
+    }
+
+    /**
+     * 获取一个命名空间，其中的 key 自动加上 "name:" 前缀，可以单独清除
+     *
+     * @param name 命名空间的名字
+     */
+    public Namespace namespace(String name) {
+        return new Namespace(name + ":");
+    }
+
+    /**
+     * 共用同一个缓存的命名空间，见 {@link #namespace(String)}
+     */
+    public class Namespace {
+        private final String prefix;
+
+        private Namespace(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public void put(String key, String value) {
+            CacheUtil.this.put(prefix + key, value);
+        }
+
+        public void put(String key, String value, int saveTime) {
+            CacheUtil.this.put(prefix + key, value, saveTime);
+        }
+
+        public void put(String key, byte[] value) {
+            CacheUtil.this.put(prefix + key, value);
+        }
+
+        public void put(String key, byte[] value, int saveTime) {
+            CacheUtil.this.put(prefix + key, value, saveTime);
+        }
+
+        public String getAsString(String key) {
+            return CacheUtil.this.getAsString(prefix + key);
+        }
+
+        public byte[] getAsBinary(String key) {
+            return CacheUtil.this.getAsBinary(prefix + key);
+        }
+
+        public Map<String, String> getAllAsString(Collection<String> keys) {
+            List<String> prefixed = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                prefixed.add(prefix + key);
+            }
+            Map<String, String> result = new HashMap<>();
+            for (Map.Entry<String, String> entry : CacheUtil.this.getAllAsString(prefixed).entrySet()) {
+                result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+            return result;
+        }
+
+        public boolean remove(String key) {
+            return CacheUtil.this.remove(prefix + key);
+        }
+
+        /**
+         * @return 命名空间中的key，不含前缀
+         */
+        public List<String> keys() {
+            List<String> keys = new ArrayList<>();
+            for (String key : mStore.keys()) {
+                if (key.startsWith(prefix)) {
+                    keys.add(key.substring(prefix.length()));
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * 清除命名空间中的所有数据
+         *
+         * @return 移除的条目数
+         */
+        public int clear() {
+            return removeByPrefix(prefix);
+        }
+    }
+
+    /**
+     * 清除所有数据
+     */
+    public void clear() {
+        mMemoryCache.clear();
+        mBitmapMemoryCache.clear();
+        mStore.clear();
+    }
+
+    /**
+     * 多进程模式下，其他进程修改或移除数据时回调
+     */
+    public interface OnChangeListener {
+        /**
+         * 在后台线程回调
+         *
+         * @param key 被修改的key，无法得知时为 null
+         */
+        void onChanged(String key);
+    }
+
+    /**
+     * 设置多进程模式下其他进程修改数据的回调，见 {@link Builder#multiProcess()}
+     */
+    public void setOnChangeListener(OnChangeListener listener) {
+        mOnChangeListener = listener;
+    }
+
+    /**
+     * 其他进程修改了数据，内存中的数据失效
+     */
+    private void onChangedByOtherProcess(String key) {
+        if (key == null) {
+            mMemoryCache.clear();
+            mBitmapMemoryCache.clear();
+        } else {
+            mMemoryCache.remove(key);
+            mBitmapMemoryCache.remove(key);
+        }
+        OnChangeListener listener = mOnChangeListener;
+        if (listener != null) {
+            listener.onChanged(key);
+        }
+    }
+
+    /**
+     * 写后模式下，立即在后台写入所有待写数据，非写后模式下没有作用
+     */
+    public void flush() {
+        if (mWriteBehindStore != null) {
+            mWriteBehindStore.flush();
+        }
+    }
+
+    /**
+     * 写后模式下，写入所有待写数据并等待完成，用于退出前落盘
+     *
+     * @return 是否在超时之前写完，非写后模式下直接返回 true
+     */
+    public boolean awaitFlushed(long timeout, TimeUnit unit) {
+        return mWriteBehindStore == null || mWriteBehindStore.awaitFlushed(timeout, unit);
+    }
+
+    /**
+     * @return String、JSON、byte 数据内存缓存的命中情况
+     */
+    public TierStats memoryStats() {
+        return new TierStats(mMemoryCache.hitCount(), mMemoryCache.missCount(),
+                mMemoryCache.size(), mMemoryCache.maxSize());
+    }
+
+    /**
+     * @return Bitmap 内存缓存的命中情况
+     */
+    public TierStats bitmapMemoryStats() {
+        return new TierStats(mBitmapMemoryCache.hitCount(), mBitmapMemoryCache.missCount(),
+                mBitmapMemoryCache.size(), mBitmapMemoryCache.maxSize());
+    }
+
+    /**
+     * @return 磁盘缓存的命中情况
+     */
+    public TierStats diskStats() {
+        return new TierStats(mStats.hitCount(), mStats.missCount(),
+                mStore.size(), mMaxSize);
+    }
+
+    /**
+     * @return 磁盘缓存当前的统计，包括命中、各种原因的移除、写入字节数和读写耗时分布
+     */
+    public CacheStats.Snapshot stats() {
+        return mStats.snapshot(mStore.size(), mStore.count(), mMaxSize,
+                mMemoryCache.hitCount(), mMemoryCache.missCount());
+    }
+
+    /**
+     * 定期收到统计的回调
+     */
+    public interface StatsListener {
+        /**
+         * 在后台线程回调
+         */
+        void onStats(CacheStats.Snapshot stats);
+    }
+
+    /**
+     * 设置定期收到统计的回调，已有的回调被替换
+     *
+     * @param listener       为 null 时停止回调
+     * @param intervalMillis 回调的间隔
+     */
+    public synchronized void setStatsListener(StatsListener listener, long intervalMillis) {
+        mStatsListener = listener;
+        if (mStatsReport != null) {
+            mStatsReport.cancel(false);
+            mStatsReport = null;
+        }
+        if (listener != null) {
+            mStatsReport = statsExecutor().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    StatsListener listener = mStatsListener;
+                    if (listener != null) {
+                        listener.onStats(stats());
+                    }
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService statsExecutor() {
+        if (sStatsExecutor == null) {
+            sStatsExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CacheUtil-stats");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sStatsExecutor;
+    }
+
+    /**
+     * 立即在当前线程清理一轮已过期的数据
+     *
+     * @return 回收的字节数
+     */
+    public long sweepExpired() {
+        return mSweeper != null ? mSweeper.sweep() : mStore.removeExpired(SWEEP_MAX_COUNT);
+    }
+
+    /**
+     * @return 后台清理已过期数据的情况，没有开启时返回 null
+     */
+    public SweepStats sweepStats() {
+        return mSweeper == null ? null : new SweepStats(mSweeper.passCount(),
+                mSweeper.reclaimedBytes(), mSweeper.lastSweepAt());
+    }
+
+    /**
+     * 后台清理已过期数据的情况
+     */
+    public static class SweepStats {
+        /**
+         * 执行过的轮数
+         */
+        public final long passCount;
+        /**
+         * 累计回收的字节数
+         */
+        public final long reclaimedBytes;
+        /**
+         * 上一轮结束的时间点（毫秒），没有执行过时为 0
+         */
+        public final long lastSweepAt;
+
+        private SweepStats(long passCount, long reclaimedBytes, long lastSweepAt) {
+            this.passCount = passCount;
+            this.reclaimedBytes = reclaimedBytes;
+            this.lastSweepAt = lastSweepAt;
+        }
+
+        @Override
+        public String toString() {
+            return "SweepStats{" +
+                    "passCount=" + passCount +
+                    ", reclaimedBytes=" + reclaimedBytes +
+                    ", lastSweepAt=" + lastSweepAt +
+                    '}';
+        }
+    }
+
+    /**
+     * 一级缓存的命中情况
+     */
+    public static class TierStats {
+        public final long hitCount;
+        public final long missCount;
+        /**
+         * 当前占用的字节数
+         */
+        public final long size;
+        /**
+         * 最大字节数
+         */
+        public final long maxSize;
+
+        private TierStats(long hitCount, long missCount, long size, long maxSize) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return 命中率，没有读取过时返回 0
+         */
+        public float hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : hitCount * 1.0f / total;
+        }
+
+        @Override
+        public String toString() {
+            return "TierStats{" +
+                    "hitCount=" + hitCount +
+                    ", missCount=" + missCount +
+                    ", size=" + size +
+                    ", maxSize=" + maxSize +
+                    '}';
+        }
+    }
+
+    /**
+     *缓存管理器
+     */
+    public class CacheManager implements CacheStore {
+        private static final String MANIFEST_NAME = "cache.manifest";
+        // 流式写入时的临时文件后缀
+        private static final String TMP_SUFFIX = ".tmp";
+        // 文件锁的分段数
+        private static final int LOCK_STRIPES = 32;
+
+        private final AtomicLong cacheSize;
+        private final AtomicInteger cacheCount;
+        private final long sizeLimit;
+        private final int countLimit;
+        private final int directoryLevels;
+        private final boolean multiProcess;
+        // 相对缓存目录的文件路径 → 记录，与清单共用同一个记录对象
+        private final ConcurrentMap<String, CacheManifest.Record> entries = new ConcurrentHashMap<>();
+        // 淘汰顺序，只在单次 O(1) / O(log n) 的操作期间加锁
+        private final EvictionPolicy<String> evictionPolicy;
+        // 和淘汰策略由同一把锁保护
+        private final ExpiryIndex<String> expiry = new ExpiryIndex<>();
+        // 同一个文件的写入、删除和淘汰互斥；先取文件锁再取淘汰策略的锁
+        private final ReentrantLock[] fileLocks = new ReentrantLock[LOCK_STRIPES];
+        private final CacheManifest manifest;
+        // 统计完成之前写入需要等待，避免超出容量限制
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        // 多进程模式下监听清单的修改
+        private FileObserver observer;
+        private ExecutorService syncExecutor;
+        private final AtomicBoolean syncScheduled = new AtomicBoolean();
+        protected File cacheDir;
+
+        private CacheManager(File cacheDir, long sizeLimit, int countLimit, int directoryLevels,
+                             boolean multiProcess, EvictionPolicy<String> evictionPolicy) {
+            this.cacheDir = cacheDir;
+            this.sizeLimit = sizeLimit;
+            this.countLimit = countLimit;
+            this.directoryLevels = directoryLevels;
+            this.multiProcess = multiProcess;
+            this.evictionPolicy = evictionPolicy;
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                fileLocks[i] = new ReentrantLock();
+            }
+            cacheSize = new AtomicLong();
+            cacheCount = new AtomicInteger();
+            manifest = new CacheManifest(new File(cacheDir, MANIFEST_NAME), multiProcess);
+            List<CacheManifest.Record> records = manifest.load();
+            if (multiProcess) {
+                watchOtherProcesses();
+            }
+            if (records != null) {
+                for (CacheManifest.Record record : records) {
+                    account(record);
+                }
+                loaded.countDown();
+            } else {
+                calculateCacheSizeAndCacheCount();
+            }
+        }
+
+        /**
+         * 多进程模式下，其他进程修改清单后读入它们的修改：
+         * 更新大小统计和淘汰顺序，让本进程内存中的数据失效
+         */
+        private void watchOtherProcesses() {
+            manifest.setListener(new CacheManifest.Listener() {
+                @Override
+                public void onPut(CacheManifest.Record record, CacheManifest.Record old) {
+                    replace(record);
+                    onChangedByOtherProcess(record.key);
+                }
+
+                @Override
+                public void onRemove(CacheManifest.Record record) {
+                    forget(record.name);
+                    onChangedByOtherProcess(record.key);
+                }
+            });
+            syncExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CacheUtil-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            observer = new FileObserver(cacheDir.getPath(), FileObserver.MODIFY | FileObserver.MOVED_TO) {
+                @Override
+                public void onEvent(int event, String path) {
+                    // 连续的修改只读入一次
+                    if (MANIFEST_NAME.equals(path) && syncScheduled.compareAndSet(false, true)) {
+                        syncExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                syncScheduled.set(false);
+                                manifest.sync();
+                            }
+                        });
+                    }
+                }
+            };
+            observer.startWatching();
+        }
+
+        /**
+         * 没有可用的清单时扫描缓存目录计算 cacheSize和cacheCount，完成后重写清单
+         */
+        private void calculateCacheSizeAndCacheCount() {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<CacheManifest.Record> found = new ArrayList<>();
+                        scan(cacheDir, "", found);
+                        // 按最后使用时间依次加入，淘汰顺序与上次运行保持一致
+                        Collections.sort(found, new Comparator<CacheManifest.Record>() {
+                            @Override
+                            public int compare(CacheManifest.Record a, CacheManifest.Record b) {
+                                return a.lastAccess < b.lastAccess ? -1 : (a.lastAccess == b.lastAccess ? 0 : 1);
+                            }
+                        });
+                        List<CacheManifest.Record> added = new ArrayList<>();
+                        for (CacheManifest.Record record : found) {
+                            // 扫描期间已经写入的文件以写入时的记录为准
+                            if (account(record)) {
+                                added.add(record);
+                            }
+                        }
+                        manifest.merge(added);
+                    } finally {
+                        loaded.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        /**
+         * 递归扫描目录中的缓存文件，文件名记为相对缓存目录的路径
+         */
+        private void scan(File dir, String prefix, List<CacheManifest.Record> found) {
+            File[] cachedFiles = dir.listFiles();
+            if (cachedFiles == null) {
+                return;
+            }
+            for (File cachedFile : cachedFiles) {
+                String fileName = cachedFile.getName();
+                if (cachedFile.isDirectory()) {
+                    scan(cachedFile, prefix + fileName + File.separator, found);
+                } else if (!fileName.startsWith(MANIFEST_NAME) && !fileName.endsWith(TMP_SUFFIX)) {
+                    found.add(new CacheManifest.Record(prefix + fileName, null,
+                            calculateSize(cachedFile), cachedFile.lastModified(), 0));
+                }
+            }
+        }
+
+        /**
+         * 把一个文件计入统计和淘汰顺序
+         *
+         * @return 是否计入，已有记录时返回 false
+         */
+        private boolean account(CacheManifest.Record record) {
+            synchronized (evictionPolicy) {
+                if (entries.putIfAbsent(record.name, record) != null) {
+                    return false;
+                }
+                cacheSize.addAndGet(record.size);
+                cacheCount.addAndGet(1);
+                evictionPolicy.onPut(record.name, record.size, record.expireAt);
+                expiry.put(record.name, record.expireAt);
+            }
+            return true;
+        }
+
+        /**
+         * 新增或覆盖一个文件的记录，统计一次加锁调整，同一个 key 并发写入不会重复计数
+         */
+        private void replace(CacheManifest.Record record) {
+            synchronized (evictionPolicy) {
+                CacheManifest.Record old = entries.put(record.name, record);
+                if (old != null) {
+                    cacheSize.addAndGet(record.size - old.size);
+                    evictionPolicy.onRemove(record.name);
+                } else {
+                    cacheSize.addAndGet(record.size);
+                    cacheCount.addAndGet(1);
+                }
+                evictionPolicy.onPut(record.name, record.size, record.expireAt);
+                expiry.put(record.name, record.expireAt);
+            }
+        }
+
+        /**
+         * 写入前腾出空间，覆盖的文件按差值计算；必须在取文件锁之前调用，淘汰时会取其他文件的锁
+         */
+        private void makeRoom(Collection<CacheManifest.Record> records) {
+            awaitLoaded();
+            long size = 0;
+            int count = 0;
+            for (CacheManifest.Record record : records) {
+                CacheManifest.Record old = entries.get(record.name);
+                size += record.size - (old == null ? 0 : old.size);
+                if (old == null) {
+                    count++;
+                }
+            }
+            if (cacheCount.get() + count > countLimit || cacheSize.get() + size > sizeLimit) {
+                // 已过期的文件先腾出空间，不够时才淘汰有效的文件
+                removeExpired(Integer.MAX_VALUE);
+            }
+            while (cacheCount.get() + count > countLimit
+                    || cacheSize.get() + size > sizeLimit) {
+                if (!removeNext()) {
+                    break;
+                }
+            }
+        }
+
+        private ReentrantLock fileLock(String name) {
+            return fileLocks[(name.hashCode() & 0x7FFFFFFF) % LOCK_STRIPES];
+        }
+
+        /**
+         * 按分段顺序取多个文件的锁，避免互相等待
+         */
+        private List<ReentrantLock> lockFiles(Collection<String> names) {
+            TreeSet<Integer> stripes = new TreeSet<>();
+            for (String name : names) {
+                stripes.add((name.hashCode() & 0x7FFFFFFF) % LOCK_STRIPES);
+            }
+            List<ReentrantLock> locks = new ArrayList<>(stripes.size());
+            for (int stripe : stripes) {
+                fileLocks[stripe].lock();
+                locks.add(fileLocks[stripe]);
+            }
+            return locks;
+        }
+
+        private void unlock(List<ReentrantLock> locks) {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+
+        @Override
+        public CacheEntry get(String key) {
+            String name = nameOf(key);
+            touch(name);
+            return readFile(name, key);
+        }
+
+        /**
+         * 按文件名排序后依次读取，同一个子目录中的文件连续访问；最后使用时间一次加锁更新
+         */
+        @Override
+        public Map<String, CacheEntry> getAll(Collection<String> keys) {
+            TreeMap<String, String> names = new TreeMap<>();
+            for (String key : keys) {
+                names.put(nameOf(key), key);
+            }
+            long now = System.currentTimeMillis();
+            synchronized (evictionPolicy) {
+                for (String name : names.keySet()) {
+                    CacheManifest.Record record = entries.get(name);
+                    if (record != null) {
+                        record.lastAccess = now;
+                    }
+                    evictionPolicy.onAccess(name);
+                }
+            }
+            Map<String, CacheEntry> result = new HashMap<>();
+            for (Map.Entry<String, String> name : names.entrySet()) {
+                CacheEntry entry = readFile(name.getKey(), name.getValue());
+                if (entry != null) {
+                    result.put(name.getValue(), entry);
+                }
+            }
+            return result;
+        }
+
+        private CacheEntry readFile(String name, String key) {
+            RandomAccessFile RAFile = null;
+            try {
+                RAFile = new RandomAccessFile(new File(cacheDir, name), "r");
+                CacheEntry entry = CacheEntry.read(RAFile, 0, (int) RAFile.length());
+                // 附加数据中保存了原始 key，不一致说明是摘要冲突的另一个 key
+                if (entry != null && entry.extra.length > 0
+                        && !Arrays.equals(entry.extra, key.getBytes(UTF_8))) {
+                    return null;
+                }
+                return entry;
+            } catch (FileNotFoundException e) {
+                // 清单中的记录在使用时才校验，文件已经不存在时移除记录
+                if (entries.containsKey(name)) {
+                    ReentrantLock lock = fileLock(name);
+                    lock.lock();
+                    try {
+                        // 持锁后再确认一次，期间可能已经重新写入
+                        if (!new File(cacheDir, name).exists()) {
+                            forget(name);
+                            manifest.remove(name);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                if (RAFile != null) {
+                    try {
+                        RAFile.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean put(String key, EntryHeader header, byte[] payload) {
+            return putAll(Collections.singletonMap(key, new CacheEntry(header, payload)));
+        }
+
+        /**
+         * 所有记录一次追加到清单，之后依次写文件；写文件和更新记录期间持有这些文件的锁
+         */
+        @Override
+        public boolean putAll(Map<String, CacheEntry> values) {
+            List<CacheManifest.Record> records = new ArrayList<>(values.size());
+            List<EntryHeader> headers = new ArrayList<>(values.size());
+            List<byte[]> keys = new ArrayList<>(values.size());
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, CacheEntry> value : values.entrySet()) {
+                String key = value.getKey();
+                byte[] keyBytes = keyBytes(key);
+                EntryHeader header = value.getValue().header.withExtraLength(keyBytes.length);
+                records.add(new CacheManifest.Record(nameOf(key), key,
+                        header.entryLength(), now, header.expireAt()));
+                headers.add(header);
+                keys.add(keyBytes);
+            }
+            makeRoom(records);
+            List<String> names = new ArrayList<>(records.size());
+            for (CacheManifest.Record record : records) {
+                names.add(record.name);
+            }
+            List<ReentrantLock> locks = lockFiles(names);
+            try {
+                // 先记入清单再写文件，中途退出时只会留下文件不存在的记录，不会留下没有记录的文件
+                manifest.putAll(records);
+                List<String> failed = new ArrayList<>();
+                int i = 0;
+                for (CacheEntry value : values.values()) {
+                    CacheManifest.Record record = records.get(i);
+                    if (writeFile(new File(cacheDir, record.name), headers.get(i), keys.get(i), value.payload)) {
+                        replace(record);
+                    } else {
+                        failed.add(record.name);
+                    }
+                    i++;
+                }
+                if (!failed.isEmpty()) {
+                    discard(failed);
+                }
+                return failed.isEmpty();
+            } finally {
+                unlock(locks);
+            }
+        }
+
+        /**
+         * @return 是否写入成功
+         */
+        private boolean writeFile(File file, EntryHeader header, byte[] keyBytes, byte[] payload) {
+            FileOutputStream out = null;
+            File target = file;
+            try {
+                File parent = file.getParentFile();
+                if (directoryLevels > 0 && !parent.isDirectory()) {
+                    parent.mkdirs();
+                }
+                // 多进程模式下先写临时文件再替换，其他进程不会读到写了一半的文件
+                if (multiProcess) {
+                    target = tempFileFor(file);
+                }
+                out = new FileOutputStream(target);
+                // 头部、key 和内容一次写入，不拼接数组
+                ByteBuffer[] buffers = {ByteBuffer.wrap(header.toBytes()),
+                        ByteBuffer.wrap(keyBytes), ByteBuffer.wrap(payload)};
+                FileChannel channel = out.getChannel();
+                long remaining = header.entryLength();
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                out.close();
+                out = null;
+                if (target != file && !target.renameTo(file)) {
+                    throw new IOException("can't rename " + target + " to " + file);
+                }
+                return true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return false;
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (target != file) {
+                    target.delete();
+                }
+            }
+        }
+
+        @Override
+        public InputStream openInputStream(String key) {
+            String name = nameOf(key);
+            touch(name);
+            try {
+                return EntryInputStream.open(new File(cacheDir, name), key.getBytes(UTF_8));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        @Override
+        public ByteBuffer map(String key) {
+            String name = nameOf(key);
+            touch(name);
+            RandomAccessFile RAFile = null;
+            try {
+                RAFile = new RandomAccessFile(new File(cacheDir, name), "r");
+                return CacheEntry.map(RAFile, 0, (int) RAFile.length(), key.getBytes(UTF_8));
+            } catch (FileNotFoundException e) {
+                return null;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                if (RAFile != null) {
+                    try {
+                        RAFile.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public CacheOutputStream openOutputStream(String key, int ttl) {
+            try {
+                return new FileEditor(key, ttl);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        @Override
+        public File file(String key) {
+            File f = new File(cacheDir, nameOf(key));
+            if (f.exists())
+                return f;
+            return null;
+        }
+
+        @Override
+        public long size() {
+            return cacheSize.get();
+        }
+
+        @Override
+        public int count() {
+            return cacheCount.get();
+        }
+
+        /**
+         * 查清单中的记录，启动时等待清单读取完成
+         */
+        @Override
+        public boolean contains(String key) {
+            awaitLoaded();
+            return entries.containsKey(nameOf(key));
+        }
+
+        private void touch(String name) {
+            // 最后使用时间只记在内存中，重写清单时一起保存，读取时不修改文件
+            CacheManifest.Record record = entries.get(name);
+            if (record != null) {
+                record.lastAccess = System.currentTimeMillis();
+            }
+            synchronized (evictionPolicy) {
+                evictionPolicy.onAccess(name);
+            }
+        }
+
+        /**
+         * key 对应的文件路径（相对缓存目录）：key 的 MD5，前 directoryLevels 段各取两位作为子目录
+         */
+        private String nameOf(String key) {
+            String digest = digest(key);
+            if (directoryLevels == 0) {
+                return digest;
+            }
+            StringBuilder name = new StringBuilder(digest.length() + directoryLevels * 3);
+            for (int i = 0; i < directoryLevels; i++) {
+                name.append(digest, i * 2, i * 2 + 2).append(File.separatorChar);
+            }
+            return name.append(digest).toString();
+        }
+
+        /**
+         * 在目标文件旁创建一个唯一的临时文件，同时写同一个 key 时互不影响
+         */
+        private File tempFileFor(File file) throws IOException {
+            return File.createTempFile(file.getName(), TMP_SUFFIX, file.getParentFile());
+        }
+
+        /**
+         * 原始 key 保存在附加数据中，读取时校验，超出附加数据长度时不保存
+         */
+        private byte[] keyBytes(String key) {
+            byte[] keyBytes = key.getBytes(UTF_8);
+            return keyBytes.length > 0xFFFF ? new byte[0] : keyBytes;
+        }
+
+        private String digest(String key) {
+            try {
+                byte[] md5 = MessageDigest.getInstance("MD5").digest(key.getBytes(UTF_8));
+                char[] hex = new char[md5.length * 2];
+                for (int i = 0; i < md5.length; i++) {
+                    hex[i * 2] = HEX_DIGITS[(md5[i] >> 4) & 0x0F];
+                    hex[i * 2 + 1] = HEX_DIGITS[md5[i] & 0x0F];
+                }
+                return new String(hex);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean remove(String key) {
+            String name = nameOf(key);
+            ReentrantLock lock = fileLock(name);
+            lock.lock();
+            try {
+                forget(name);
+                manifest.remove(name);
+                return new File(cacheDir, name).delete();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 移除记录一次追加到清单，之后依次删除文件
+         */
+        @Override
+        public int removeAll(Collection<String> keys) {
+            List<String> names = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                names.add(nameOf(key));
+            }
+            List<ReentrantLock> locks = lockFiles(names);
+            try {
+                for (String name : names) {
+                    forget(name);
+                }
+                manifest.removeAll(names);
+                int removed = 0;
+                for (String name : names) {
+                    if (new File(cacheDir, name).delete()) {
+                        removed++;
+                    }
+                }
+                return removed;
+            } finally {
+                unlock(locks);
+            }
+        }
+
+        /**
+         * 过期时间只在写入时记录，扫描得到的旧文件没有过期时间，仍在读取时检查。
+         * 持有文件锁后再确认一次仍已过期，期间重新写入的文件保留
+         */
+        @Override
+        public long removeExpired(int maxCount) {
+            awaitLoaded();
+            List<String> candidates;
+            synchronized (evictionPolicy) {
+                candidates = expiry.expired(System.currentTimeMillis(), maxCount);
+            }
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+            long reclaimed = 0;
+            List<ReentrantLock> locks = lockFiles(candidates);
+            try {
+                List<String> names = new ArrayList<>(candidates.size());
+                long now = System.currentTimeMillis();
+                synchronized (evictionPolicy) {
+                    for (String name : candidates) {
+                        CacheManifest.Record record = entries.get(name);
+                        if (record == null || record.expireAt <= 0 || record.expireAt > now) {
+                            continue;
+                        }
+                        forget(name);
+                        names.add(name);
+                        reclaimed += record.size;
+                        mStats.recordRemoval(CacheStats.CAUSE_EXPIRED, record.size);
+                    }
+                }
+                if (names.isEmpty()) {
+                    return 0;
+                }
+                manifest.removeAll(names);
+                for (String name : names) {
+                    new File(cacheDir, name).delete();
+                }
+            } finally {
+                unlock(locks);
+            }
+            return reclaimed;
+        }
+
+        /**
+         * 清单中没有 key 的文件从附加数据中读出原始 key，旧格式的文件无法还原 key，不包含在内
+         */
+        @Override
+        public List<String> keys() {
+            awaitLoaded();
+            List<String> keys = new ArrayList<>(entries.size());
+            for (CacheManifest.Record record : entries.values()) {
+                String key = record.key != null ? record.key : readKey(record.name);
+                if (key != null) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        }
+
+        private String readKey(String name) {
+            RandomAccessFile RAFile = null;
+            try {
+                RAFile = new RandomAccessFile(new File(cacheDir, name), "r");
+                byte[] head = new byte[EntryHeader.SIZE];
+                if (RAFile.length() < head.length) {
+                    return null;
+                }
+                RAFile.readFully(head);
+                EntryHeader header = EntryHeader.parse(head, 0);
+                if (header == null || header.extraLength == 0) {
+                    return null;
+                }
+                byte[] extra = new byte[header.extraLength];
+                RAFile.readFully(extra);
+                return new String(extra, UTF_8);
+            } catch (IOException e) {
+                return null;
+            } finally {
+                if (RAFile != null) {
+                    try {
+                        RAFile.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            awaitLoaded();
+            for (ReentrantLock lock : fileLocks) {
+                lock.lock();
+            }
+            try {
+                synchronized (evictionPolicy) {
+                    evictionPolicy.clear();
+                    expiry.clear();
+                    entries.clear();
+                    cacheSize.set(0);
+                    cacheCount.set(0);
+                }
+                deleteContents(cacheDir);
+                manifest.clear();
+            } finally {
+                for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+                    fileLocks[i].unlock();
+                }
+            }
+        }
+
+        private void deleteContents(File dir) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (f.isDirectory()) {
+                        deleteContents(f);
+                        f.delete();
+                    } else if (!f.getName().startsWith(MANIFEST_NAME)) {
+                        f.delete();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 丢弃写入失败的文件：可能只写了一半，连同已记入清单的记录和统计一起移除。需要持有这些文件的锁
+         */
+        private void discard(List<String> names) {
+            for (String name : names) {
+                new File(cacheDir, name).delete();
+                forget(name);
+            }
+            manifest.removeAll(names);
+        }
+
+        /**
+         * 从统计和淘汰顺序中移除一个文件
+         *
+         * @return 移除的记录，没有记录时返回 null
+         */
+        private CacheManifest.Record forget(String name) {
+            synchronized (evictionPolicy) {
+                CacheManifest.Record record = entries.remove(name);
+                if (record != null) {
+                    cacheSize.addAndGet(-record.size);
+                    cacheCount.addAndGet(-1);
+                }
+                evictionPolicy.onRemove(name);
+                expiry.remove(name);
+                return record;
+            }
+        }
+
+        /**
+         * 只在记录仍是 expected 时移除，期间被重新写入的文件保留
+         *
+         * @return 是否移除了记录
+         */
+        private boolean forget(String name, CacheManifest.Record expected) {
+            synchronized (evictionPolicy) {
+                if (entries.get(name) != expected) {
+                    return false;
+                }
+                forget(name);
+                return true;
+            }
+        }
+
+        /**
+         * 移除淘汰策略选出的文件。持有该文件的锁后确认记录没有被替换再删除，
+         * 选出之后重新写入的文件不会被误删
+         *
+         * @return 是否还能继续淘汰
+         */
+        private boolean removeNext() {
+            long start = System.nanoTime();
+            String name;
+            CacheManifest.Record selected;
+            synchronized (evictionPolicy) {
+                name = evictionPolicy.victim();
+                if (name == null) {
+                    return false;
+                }
+                selected = entries.get(name);
+                if (selected == null) {
+                    evictionPolicy.onRemove(name);
+                    expiry.remove(name);
+                    return true;
+                }
+            }
+            ReentrantLock lock = fileLock(name);
+            lock.lock();
+            try {
+                if (!forget(name, selected)) {
+                    // 已被替换或移除，交给下一轮重新选择
+                    return true;
+                }
+                manifest.remove(name);
+                new File(cacheDir, name).delete();
+            } finally {
+                lock.unlock();
+            }
+            mStats.recordEviction(selected.size, System.nanoTime() - start);
+            return true;
+        }
+
+        private void awaitLoaded() {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private long calculateSize(File file) {
+            return file.length();
+        }
+
+        /**
+         * 流式写入一个文件：先写临时文件，头部占位，关闭时补上长度和校验和再替换正式文件
+         */
+        private class FileEditor extends CacheOutputStream {
+            private final String key;
+            private final String name;
+            private final File file;
+            private final File tmp;
+            private final int extraLength;
+            private final int ttl;
+            private final FileOutputStream fileOut;
+            private final OutputStream out;
+            private final CRC32 crc32 = new CRC32();
+            private long length;
+            private boolean done;
+
+            private FileEditor(String key, int ttl) throws IOException {
+                this.key = key;
+                this.name = nameOf(key);
+                this.file = new File(cacheDir, name);
+                this.ttl = ttl;
+                File parent = file.getParentFile();
+                if (directoryLevels > 0 && !parent.isDirectory()) {
+                    parent.mkdirs();
+                }
+                this.tmp = tempFileFor(file);
+                byte[] keyBytes = keyBytes(key);
+                extraLength = keyBytes.length;
+                fileOut = new FileOutputStream(tmp);
+                out = new BufferedOutputStream(fileOut);
+                out.write(new byte[EntryHeader.SIZE]);
+                out.write(keyBytes);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                check();
+                out.write(b);
+                crc32.update(b);
+                length++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                check();
+                out.write(b, off, len);
+                crc32.update(b, off, len);
+                length += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                check();
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (done) {
+                    return;
+                }
+                done = true;
+                boolean committed = false;
+                try {
+                    out.flush();
+                    if (length > Integer.MAX_VALUE - EntryHeader.SIZE - extraLength) {
+                        throw new IOException("cache entry too large: " + length);
+                    }
+                    EntryHeader header = new EntryHeader(0, extraLength, System.currentTimeMillis(),
+                            ttl, (int) length, (int) crc32.getValue());
+                    fileOut.getChannel().write(ByteBuffer.wrap(header.toBytes()), 0);
+                    out.close();
+                    CacheManifest.Record record = new CacheManifest.Record(name, key,
+                            header.entryLength(), header.createdAt, header.expireAt());
+                    makeRoom(Collections.singletonList(record));
+                    ReentrantLock lock = fileLock(name);
+                    lock.lock();
+                    try {
+                        manifest.put(record);
+                        if (!tmp.renameTo(file)) {
+                            CacheManager.this.discard(Collections.singletonList(name));
+                            throw new IOException("can't rename " + tmp + " to " + file);
+                        }
+                        replace(record);
+                    } finally {
+                        lock.unlock();
+                    }
+                    committed = true;
+                } finally {
+                    if (!committed) {
+                        discard();
+                    }
+                }
+            }
+
+            @Override
+            public void abort() {
+                if (!done) {
+                    done = true;
+                    discard();
+                }
+            }
+
+            private void discard() {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                tmp.delete();
+            }
+
+            private void check() throws IOException {
+                if (done) {
+                    throw new IOException("stream closed");
+                }
+            }
+        }
+    }
+
+    /**
+     * 数据转换工具类
+     */
+    private static class Utils {
 
         /*
          * Bitmap → byte[]
          */
-        private static byte[] Bitmap2Bytes(Bitmap bm) {
+        private static byte[] Bitmap2Bytes(Bitmap bm, Bitmap.CompressFormat format, int quality) {
             if (bm == null) {
                 return null;
             }
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bm.compress(Bitmap.CompressFormat.PNG, 100, baos);
+            bm.compress(format, quality, baos);
             return baos.toByteArray();
         }
 
@@ -0,0 +1,156 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 从存储引擎读出的一条缓存数据
+ */
+public final class CacheEntry {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    // 旧格式 "<13位毫秒>-<秒> " 中的分隔符
+    private static final byte LEGACY_SEPARATOR = ' ';
+
+    private static final byte[] NO_EXTRA = new byte[0];
+
+    public final EntryHeader header;
+    /**
+     * 头部之后的附加数据，文件引擎在其中保存原始 key
+     */
+    public final byte[] extra;
+    /**
+     * 数据内容，已过期时为 null
+     */
+    public final byte[] payload;
+
+    public CacheEntry(EntryHeader header, byte[] payload) {
+        this(header, NO_EXTRA, payload);
+    }
+
+    CacheEntry(EntryHeader header, byte[] extra, byte[] payload) {
+        this.header = header;
+        this.extra = extra;
+        this.payload = payload;
+    }
+
+    public boolean isExpired() {
+        return payload == null;
+    }
+
+    /**
+     * @return 内容替换为 payload 的数据，用于解码之后
+     */
+    public CacheEntry withPayload(byte[] payload) {
+        return new CacheEntry(header, extra, payload);
+    }
+
+    /**
+     * 读取一条数据，先只读头部，过期的数据不读内容
+     *
+     * @param file   数据所在的文件
+     * @param offset 数据在文件中的偏移
+     * @param length 数据的总字节数
+     * @return 数据，内容校验失败时返回 null
+     */
+    public static CacheEntry read(RandomAccessFile file, long offset, int length) throws IOException {
+        if (length >= EntryHeader.SIZE) {
+            byte[] head = new byte[EntryHeader.SIZE];
+            file.seek(offset);
+            file.readFully(head);
+            EntryHeader header = EntryHeader.parse(head, 0);
+            if (header != null && header.entryLength() == length) {
+                byte[] extra = NO_EXTRA;
+                if (header.extraLength > 0) {
+                    extra = new byte[header.extraLength];
+                    file.readFully(extra);
+                }
+                if (header.isExpired()) {
+                    return new CacheEntry(header, extra, null);
+                }
+                byte[] payload = new byte[header.payloadLength];
+                file.readFully(payload);
+                return header.verify(payload) ? new CacheEntry(header, extra, payload) : null;
+            }
+        }
+        byte[] data = new byte[length];
+        file.seek(offset);
+        file.readFully(data);
+        return legacy(data);
+    }
+
+    /**
+     * 把一条数据的内容映射到内存，头部按偏移跳过，不复制到 Java 堆
+     * <p>映射的内容不做校验。映射建立之后文件被删除或替换不影响已返回的 ByteBuffer。</p>
+     *
+     * @param file   数据所在的文件
+     * @param offset 数据在文件中的偏移
+     * @param length 数据的总字节数
+     * @param key    附加数据中应有的原始 key，为 null 时不检查
+     * @return 只读的内容，已过期或 key 不一致时返回 null
+     */
+    public static ByteBuffer map(RandomAccessFile file, long offset, int length, byte[] key) throws IOException {
+        MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        byte[] head = new byte[Math.min(EntryHeader.SIZE, length)];
+        mapped.get(head);
+        EntryHeader header = EntryHeader.parse(head, 0);
+        if (header == null || header.entryLength() != length) {
+            // 旧格式的数据没有固定的头部，读出后包装
+            CacheEntry entry = read(file, offset, length);
+            return entry == null || entry.isExpired() ? null : ByteBuffer.wrap(entry.payload).asReadOnlyBuffer();
+        }
+        if (header.isExpired()) {
+            return null;
+        }
+        if (key != null && header.extraLength > 0) {
+            byte[] extra = new byte[header.extraLength];
+            mapped.get(extra);
+            if (!Arrays.equals(extra, key)) {
+                return null;
+            }
+        }
+        mapped.position(EntryHeader.SIZE + header.extraLength);
+        if (header.codecId() != 0) {
+            // 编码过的内容只能解码到 Java 堆中
+            byte[] payload = new byte[header.payloadLength];
+            mapped.get(payload);
+            payload = Codecs.decode(header, payload);
+            return payload == null ? null : ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+        return mapped.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 解析旧格式的数据：可能带有 "<13位毫秒>-<秒> " 形式的时间信息
+     */
+    static CacheEntry legacy(byte[] data) {
+        int separator = indexOf(data, LEGACY_SEPARATOR);
+        if (data.length > 15 && data[13] == '-' && separator > 14) {
+            try {
+                long createdAt = Long.parseLong(new String(data, 0, 13, US_ASCII));
+                int ttl = Integer.parseInt(new String(data, 14, separator - 14, US_ASCII));
+                byte[] payload = Arrays.copyOfRange(data, separator + 1, data.length);
+                EntryHeader header = new EntryHeader(0, 0, createdAt, ttl, payload.length, 0);
+                return new CacheEntry(header, header.isExpired() ? null : payload);
+            } catch (NumberFormatException e) {
+                // 内容恰好长得像时间信息，按没有时间信息处理
+            }
+        }
+        EntryHeader header = new EntryHeader(0, 0, 0, EntryHeader.NO_TTL, data.length, 0);
+        return new CacheEntry(header, data);
+    }
+
+    private static int indexOf(byte[] data, byte b) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,534 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 缓存清单
+ * <p>记录每个缓存文件的大小、最后使用时间和过期时间，启动时一次顺序读取即可恢复，
+ * 不需要逐个 listFiles / stat 缓存文件。</p>
+ * <p>清单只追加写入：保存文件之前先追加一条记录，所以清单中可能有文件已经不存在的记录，
+ * 由使用方在访问时校验；记录数远多于条目数时整体重写一次，同时保存最后使用时间。
+ * 清单不存在或已损坏时由使用方扫描缓存目录重建。</p>
+ * <p>多进程模式下每次修改都持有清单旁的文件锁，修改之前先读入其他进程追加的记录，
+ * 通过 {@link Listener} 通知使用方，所有进程因此共享同一份大小统计。</p>
+ */
+public class CacheManifest {
+
+    private static final int MAGIC = 0x504E434D;
+    private static final int VERSION = 2;
+    // magic(4) version(4) generation(8)
+    private static final int HEADER_SIZE = 16;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int REWRITE_MIN_RECORDS = 1000;
+    // 超过该长度的 key 不记录，保证 writeUTF 不超过 65535 字节
+    private static final int MAX_KEY_LENGTH = 20000;
+
+    private static final int READ_OK = 0;
+    private static final int READ_TRUNCATED = 1;
+    private static final int READ_CORRUPTED = 2;
+
+    private static final Random RANDOM = new Random();
+
+    private final File file;
+    private final boolean shared;
+    // 当前有效的记录，重写时直接写出
+    private final LinkedHashMap<String, Record> live = new LinkedHashMap<>();
+    private Listener listener;
+    private DataOutputStream out;
+    private int recordCount;
+    // 每次重写生成新的值，其他进程据此发现清单已被替换
+    private long generation;
+    // 已经读入的字节数
+    private long position;
+    private final File lockFile;
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+    private int lockDepth;
+
+    public CacheManifest(File file) {
+        this(file, false);
+    }
+
+    /**
+     * @param shared 是否有多个进程同时使用该清单
+     */
+    public CacheManifest(File file, boolean shared) {
+        this.file = file;
+        this.shared = shared;
+        this.lockFile = new File(file.getPath() + ".lock");
+    }
+
+    /**
+     * 设置其他进程修改记录时的回调，在持有清单锁的线程上调用
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 读取清单
+     *
+     * @return 按最后使用时间从旧到新排列的记录，清单不存在或已损坏时返回 null
+     */
+    public synchronized List<Record> load() {
+        lock();
+        try {
+            live.clear();
+            recordCount = 0;
+            generation = 0;
+            position = 0;
+            if (!file.exists()) {
+                return null;
+            }
+            int result = read(false);
+            if (result == READ_CORRUPTED) {
+                live.clear();
+                recordCount = 0;
+                position = 0;
+                file.delete();
+                return null;
+            }
+            if (result == READ_TRUNCATED) {
+                // 重写一次，之后的记录不会追加在半条记录后面
+                writeAll();
+            }
+            List<Record> records = new ArrayList<>(live.values());
+            Collections.sort(records, new Comparator<Record>() {
+                @Override
+                public int compare(Record a, Record b) {
+                    return a.lastAccess < b.lastAccess ? -1 : (a.lastAccess == b.lastAccess ? 0 : 1);
+                }
+            });
+            return records;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 多进程模式下读入其他进程的修改，单进程模式下没有作用
+     */
+    public synchronized void sync() {
+        lock();
+        try {
+            syncLocked();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 追加一条新增或覆盖记录
+     */
+    public synchronized void put(Record record) {
+        putAll(Collections.singletonList(record));
+    }
+
+    /**
+     * 一次追加多条新增或覆盖记录
+     */
+    public synchronized void putAll(Collection<Record> records) {
+        lock();
+        try {
+            syncLocked();
+            DataOutputStream out = output();
+            int start = out.size();
+            for (Record record : records) {
+                live.put(record.name, record);
+                out.writeByte(OP_PUT);
+                writeRecord(out, record);
+                recordCount++;
+            }
+            appended(out, start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 追加一条移除记录
+     */
+    public synchronized void remove(String name) {
+        removeAll(Collections.singletonList(name));
+    }
+
+    /**
+     * 一次追加多条移除记录
+     */
+    public synchronized void removeAll(Collection<String> names) {
+        lock();
+        try {
+            syncLocked();
+            DataOutputStream out = null;
+            int start = 0;
+            for (String name : names) {
+                if (live.remove(name) == null) {
+                    continue;
+                }
+                if (out == null) {
+                    out = output();
+                    start = out.size();
+                }
+                out.writeByte(OP_REMOVE);
+                out.writeUTF(name);
+                recordCount++;
+            }
+            if (out != null) {
+                appended(out, start);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 合并重建时扫描到的记录，已有的记录以已有的为准，然后重写清单
+     */
+    public synchronized void merge(Collection<Record> records) {
+        lock();
+        try {
+            syncLocked();
+            for (Record record : records) {
+                if (!live.containsKey(record.name)) {
+                    live.put(record.name, record);
+                }
+            }
+            writeAll();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 清空清单
+     */
+    public synchronized void clear() {
+        lock();
+        try {
+            live.clear();
+            writeAll();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 用当前所有条目重写清单，同时保存最新的最后使用时间。先写临时文件再替换
+     */
+    public synchronized void rewrite() {
+        lock();
+        try {
+            syncLocked();
+            writeAll();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return 清单文件本身，使用方遍历缓存目录时需要跳过
+     */
+    public File file() {
+        return file;
+    }
+
+    private void syncLocked() {
+        if (!shared || position == 0 && !file.exists()) {
+            return;
+        }
+        if (read(true) != READ_OK) {
+            // 其他进程写入时中断，用本进程已知的记录重写
+            writeAll();
+        }
+    }
+
+    /**
+     * 读入 position 之后的记录；第一次读取或清单已被其他进程重写时从头读入，并与之前的记录比较
+     */
+    private int read(boolean notify) {
+        DataInputStream in = null;
+        try {
+            FileInputStream fis = new FileInputStream(file);
+            long length = fis.getChannel().size();
+            in = new DataInputStream(new BufferedInputStream(fis, 64 * 1024));
+            if (length < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return READ_CORRUPTED;
+            }
+            long fileGeneration = in.readLong();
+            int result;
+            if (position == 0 || fileGeneration != generation) {
+                closeOutput();
+                Map<String, Record> before = new LinkedHashMap<>(live);
+                live.clear();
+                recordCount = 0;
+                result = readRecords(in, false);
+                if (notify) {
+                    notifyDiff(before);
+                }
+            } else {
+                if (length == position) {
+                    return READ_OK;
+                }
+                skipFully(in, position - HEADER_SIZE);
+                result = readRecords(in, notify);
+            }
+            generation = fileGeneration;
+            position = length;
+            return result;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return READ_CORRUPTED;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private int readRecords(DataInputStream in, boolean notify) throws IOException {
+        try {
+            while (true) {
+                int op = in.read();
+                if (op == -1) {
+                    return READ_OK;
+                }
+                String name = in.readUTF();
+                if (op == OP_PUT) {
+                    String key = in.readUTF();
+                    Record record = new Record(name, key.isEmpty() ? null : key,
+                            in.readLong(), in.readLong(), in.readLong());
+                    Record old = live.put(name, record);
+                    if (notify && listener != null) {
+                        listener.onPut(record, old);
+                    }
+                } else if (op == OP_REMOVE) {
+                    Record old = live.remove(name);
+                    if (notify && old != null && listener != null) {
+                        listener.onRemove(old);
+                    }
+                } else {
+                    return READ_CORRUPTED;
+                }
+                recordCount++;
+            }
+        } catch (EOFException e) {
+            // 最后一条记录只写了一半
+            return READ_TRUNCATED;
+        }
+    }
+
+    /**
+     * 清单被其他进程重写后，比较前后的记录并通知变化。没有变化的记录保留原对象
+     */
+    private void notifyDiff(Map<String, Record> before) {
+        for (Record old : before.values()) {
+            Record record = live.get(old.name);
+            if (record == null) {
+                if (listener != null) {
+                    listener.onRemove(old);
+                }
+            } else if (record.size == old.size && record.expireAt == old.expireAt) {
+                old.lastAccess = Math.max(old.lastAccess, record.lastAccess);
+                live.put(old.name, old);
+            } else if (listener != null) {
+                listener.onPut(record, old);
+            }
+        }
+        if (listener != null) {
+            for (Record record : live.values()) {
+                if (!before.containsKey(record.name)) {
+                    listener.onPut(record, null);
+                }
+            }
+        }
+    }
+
+    private void writeAll() {
+        closeOutput();
+        File tmp = new File(file.getPath() + ".tmp");
+        long newGeneration = RANDOM.nextLong();
+        DataOutputStream out = null;
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(newGeneration);
+            for (Record record : live.values()) {
+                out.writeByte(OP_PUT);
+                writeRecord(out, record);
+            }
+            out.flush();
+            fos.getFD().sync();
+            long length = out.size();
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("can't rename " + tmp + " to " + file);
+            }
+            recordCount = live.size();
+            generation = newGeneration;
+            position = length;
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            position = 0;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            tmp.delete();
+        }
+    }
+
+    private DataOutputStream output() throws IOException {
+        if (out == null) {
+            if (!file.exists()) {
+                writeAll();
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        return out;
+    }
+
+    private void appended(DataOutputStream out, int start) throws IOException {
+        out.flush();
+        // 追加之前已经读到文件末尾，并且持有锁，其他进程不会同时追加
+        position += out.size() - start;
+        // 记录数远多于条目数时重写
+        if (recordCount > REWRITE_MIN_RECORDS && recordCount > live.size() * 2) {
+            writeAll();
+        }
+    }
+
+    private void closeOutput() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        }
+    }
+
+    private void lock() {
+        if (!shared || lockDepth++ > 0) {
+            return;
+        }
+        try {
+            if (lockChannel == null) {
+                lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+            }
+            fileLock = lockChannel.lock();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void unlock() {
+        if (!shared || --lockDepth > 0) {
+            return;
+        }
+        if (fileLock != null) {
+            try {
+                fileLock.release();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            fileLock = null;
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        out.writeUTF(record.name);
+        out.writeUTF(record.key == null || record.key.length() > MAX_KEY_LENGTH ? "" : record.key);
+        out.writeLong(record.size);
+        out.writeLong(record.lastAccess);
+        out.writeLong(record.expireAt);
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * 其他进程修改记录时的回调
+     */
+    public interface Listener {
+        /**
+         * 其他进程新增或覆盖了一条记录
+         *
+         * @param old 之前的记录，没有时为 null
+         */
+        void onPut(Record record, Record old);
+
+        /**
+         * 其他进程移除了一条记录
+         */
+        void onRemove(Record record);
+    }
+
+    /**
+     * 一个缓存文件的记录
+     */
+    public static class Record {
+        public final String name;
+        /**
+         * 原始 key，扫描目录重建时未知，为 null
+         */
+        public final String key;
+        public final long size;
+        public volatile long lastAccess;
+        /**
+         * 过期的时间点（毫秒），0 表示永不过期
+         */
+        public final long expireAt;
+
+        public Record(String name, String key, long size, long lastAccess, long expireAt) {
+            this.name = name;
+            this.key = key;
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 写入一条缓存数据的流
+ * <p>{@link #close()} 时提交，提交之前读取到的仍是旧数据；{@link #abort()} 放弃写入的内容。
+ * 提交或放弃之后再调用两者都不起作用。</p>
+ */
+public abstract class CacheOutputStream extends OutputStream {
+
+    /**
+     * 放弃写入的内容，原有的数据保持不变
+     */
+    public abstract void abort();
+
+    /**
+     * 先把内容写入内存，提交时一次保存到存储引擎，用于数据不单独存放文件的引擎
+     *
+     * @param ttl 保存的时间，单位：秒，{@link EntryHeader#NO_TTL} 表示永不过期
+     */
+    public static CacheOutputStream buffered(final CacheStore store, final String key, final int ttl) {
+        return new CacheOutputStream() {
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) throws IOException {
+                check().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                check().write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (buffer != null) {
+                    byte[] payload = buffer.toByteArray();
+                    buffer = null;
+                    if (!store.put(key, EntryHeader.create(payload, ttl), payload)) {
+                        throw new IOException("can't write cache entry: " + key);
+                    }
+                }
+            }
+
+            @Override
+            public void abort() {
+                buffer = null;
+            }
+
+            private ByteArrayOutputStream check() throws IOException {
+                if (buffer == null) {
+                    throw new IOException("stream closed");
+                }
+                return buffer;
+            }
+        };
+    }
+}
@@ -0,0 +1,238 @@
+package com.pn.android.sdk.utils.cache;
+
+import android.support.annotation.IntDef;
+
+import com.pn.android.sdk.utils.stats.LatencyHistogram;
+import com.pn.android.sdk.utils.stats.StripedCounter;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * 磁盘缓存的统计
+ * <p>计数都是分段累加，耗时按 2 的幂分桶，记录时不加锁，可以在正式版本中一直开启。</p>
+ */
+public final class CacheStats {
+
+    /**
+     * 超出容量或数量限制被淘汰
+     */
+    public static final int CAUSE_CAPACITY = 0;
+    /**
+     * 已过期被移除
+     */
+    public static final int CAUSE_EXPIRED = 1;
+    /**
+     * 调用方主动移除
+     */
+    public static final int CAUSE_EXPLICIT = 2;
+
+    @IntDef({CAUSE_CAPACITY, CAUSE_EXPIRED, CAUSE_EXPLICIT})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Cause {
+    }
+
+    private static final int CAUSE_COUNT = 3;
+
+    private final StripedCounter hitCount = new StripedCounter();
+    private final StripedCounter missCount = new StripedCounter();
+    private final StripedCounter bytesWritten = new StripedCounter();
+    private final StripedCounter[] removalCounts = new StripedCounter[CAUSE_COUNT];
+    private final StripedCounter[] removalBytes = new StripedCounter[CAUSE_COUNT];
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+    private final LatencyHistogram evictLatency = new LatencyHistogram();
+
+    public CacheStats() {
+        for (int i = 0; i < CAUSE_COUNT; i++) {
+            removalCounts[i] = new StripedCounter();
+            removalBytes[i] = new StripedCounter();
+        }
+    }
+
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 记录一次从磁盘读取的耗时，批量读取记为一次
+     */
+    public void recordLoad(long nanos) {
+        loadLatency.record(nanos);
+    }
+
+    /**
+     * 记录一次写入，批量写入记为一次
+     *
+     * @param bytes 写入的字节数
+     */
+    public void recordPut(long nanos, long bytes) {
+        putLatency.record(nanos);
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * 记录移除了一个条目
+     *
+     * @param bytes 条目占用的字节数，无法得知时为 0
+     */
+    public void recordRemoval(@Cause int cause, long bytes) {
+        removalCounts[cause].increment();
+        removalBytes[cause].add(bytes);
+    }
+
+    /**
+     * 记录按淘汰策略淘汰了一个条目
+     *
+     * @param nanos 选出并移除该条目的耗时
+     */
+    public void recordEviction(long bytes, long nanos) {
+        recordRemoval(CAUSE_CAPACITY, bytes);
+        evictLatency.record(nanos);
+    }
+
+    /**
+     * @param size            当前占用的字节数
+     * @param count           当前的条目数
+     * @param maxSize         最大字节数
+     * @param memoryHitCount  内存缓存的命中次数
+     * @param memoryMissCount 内存缓存的未命中次数
+     */
+    public Snapshot snapshot(long size, int count, long maxSize,
+                             long memoryHitCount, long memoryMissCount) {
+        long[] counts = new long[CAUSE_COUNT];
+        long[] bytes = new long[CAUSE_COUNT];
+        for (int i = 0; i < CAUSE_COUNT; i++) {
+            counts[i] = removalCounts[i].sum();
+            bytes[i] = removalBytes[i].sum();
+        }
+        return new Snapshot(hitCount.sum(), missCount.sum(), memoryHitCount, memoryMissCount,
+                counts, bytes, bytesWritten.sum(), size, count, maxSize,
+                loadLatency.snapshot(), putLatency.snapshot(), evictLatency.snapshot());
+    }
+
+    /**
+     * 某一时刻的统计，各项分别读取，彼此之间不保证严格一致
+     */
+    public static final class Snapshot {
+        /**
+         * 磁盘的命中次数
+         */
+        public final long hitCount;
+        /**
+         * 磁盘的未命中次数，包括已过期和无法解码的数据
+         */
+        public final long missCount;
+        public final long memoryHitCount;
+        public final long memoryMissCount;
+        private final long[] removalCounts;
+        private final long[] removalBytes;
+        /**
+         * 累计写入的字节数，编码后的大小
+         */
+        public final long bytesWritten;
+        /**
+         * 磁盘上当前占用的字节数
+         */
+        public final long size;
+        /**
+         * 磁盘上当前的条目数
+         */
+        public final int count;
+        public final long maxSize;
+        /**
+         * 从磁盘读取的耗时
+         */
+        public final LatencyHistogram.Snapshot loadLatency;
+        /**
+         * 写入的耗时，写后模式下为放进待写队列的耗时
+         */
+        public final LatencyHistogram.Snapshot putLatency;
+        /**
+         * 每淘汰一个条目的耗时
+         */
+        public final LatencyHistogram.Snapshot evictLatency;
+
+        Snapshot(long hitCount, long missCount, long memoryHitCount, long memoryMissCount,
+                 long[] removalCounts, long[] removalBytes, long bytesWritten,
+                 long size, int count, long maxSize,
+                 LatencyHistogram.Snapshot loadLatency, LatencyHistogram.Snapshot putLatency,
+                 LatencyHistogram.Snapshot evictLatency) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.memoryHitCount = memoryHitCount;
+            this.memoryMissCount = memoryMissCount;
+            this.removalCounts = removalCounts;
+            this.removalBytes = removalBytes;
+            this.bytesWritten = bytesWritten;
+            this.size = size;
+            this.count = count;
+            this.maxSize = maxSize;
+            this.loadLatency = loadLatency;
+            this.putLatency = putLatency;
+            this.evictLatency = evictLatency;
+        }
+
+        /**
+         * @return 磁盘的命中率，没有读取过时返回 0
+         */
+        public float hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : hitCount * 1.0f / total;
+        }
+
+        /**
+         * @return 因该原因移除的条目数
+         */
+        public long removalCount(@Cause int cause) {
+            return removalCounts[cause];
+        }
+
+        /**
+         * @return 因该原因移除的字节数，主动移除时无法得知大小，不计入
+         */
+        public long removalBytes(@Cause int cause) {
+            return removalBytes[cause];
+        }
+
+        public long evictionCount() {
+            return removalCounts[CAUSE_CAPACITY];
+        }
+
+        public long expiredCount() {
+            return removalCounts[CAUSE_EXPIRED];
+        }
+
+        @Override
+        public String toString() {
+            return "CacheStats{" +
+                    "hitCount=" + hitCount +
+                    ", missCount=" + missCount +
+                    ", memoryHitCount=" + memoryHitCount +
+                    ", memoryMissCount=" + memoryMissCount +
+                    ", evictionCount=" + removalCounts[CAUSE_CAPACITY] +
+                    ", expiredCount=" + removalCounts[CAUSE_EXPIRED] +
+                    ", removeCount=" + removalCounts[CAUSE_EXPLICIT] +
+                    ", bytesWritten=" + bytesWritten +
+                    ", size=" + size +
+                    ", count=" + count +
+                    ", maxSize=" + maxSize +
+                    ", loadLatency=" + loadLatency +
+                    ", putLatency=" + putLatency +
+                    ", evictLatency=" + evictLatency +
+                    '}';
+        }
+    }
+}
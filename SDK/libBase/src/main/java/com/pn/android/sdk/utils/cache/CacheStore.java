@@ -0,0 +1,135 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存存储引擎
+ * <p>负责把 key 对应的数据连同 {@link EntryHeader} 一起落盘。</p>
+ */
+public interface CacheStore {
+
+    /**
+     * 读取 key 对应的数据
+     *
+     * @param key 保存的key
+     * @return 数据，不存在或损坏时返回 null；已过期时返回的数据只有头部，由调用方决定是否移除。
+     * 内容是落盘时的原样，由调用方按头部记录的编码方式解码
+     */
+    CacheEntry get(String key);
+
+    /**
+     * 批量读取，一次加锁，按数据在磁盘上的位置顺序读取
+     *
+     * @param keys 保存的key
+     * @return key → 数据，不存在或损坏的 key 不在其中；已过期的数据同 {@link #get(String)}
+     */
+    Map<String, CacheEntry> getAll(Collection<String> keys);
+
+    /**
+     * 保存数据
+     *
+     * @param key     保存的key
+     * @param header  数据的头部
+     * @param payload 数据内容
+     * @return 是否写入成功，失败时不会留下写了一半的数据
+     */
+    boolean put(String key, EntryHeader header, byte[] payload);
+
+    /**
+     * 批量保存，一次加锁写入
+     *
+     * @param entries key → 数据
+     * @return 是否全部写入成功，失败的条目不会留下写了一半的数据
+     */
+    boolean putAll(Map<String, CacheEntry> entries);
+
+    /**
+     * 打开 key 对应数据内容的输入流，大数据可以逐段读取，不需要一次读入内存，编码过的内容边读边解码
+     *
+     * @param key 保存的key
+     * @return 内容的输入流，由调用方关闭；不存在、已过期或损坏时返回 null
+     */
+    InputStream openInputStream(String key);
+
+    /**
+     * 把 key 对应数据的内容映射到内存，编码过的内容解码后返回
+     *
+     * @param key 保存的key
+     * @return 只读的内容，不存在或已过期时返回 null
+     */
+    ByteBuffer map(String key);
+
+    /**
+     * 打开写入 key 对应数据的输出流，关闭时一次提交
+     *
+     * @param key 保存的key
+     * @param ttl 保存的时间，单位：秒，{@link EntryHeader#NO_TTL} 表示永不过期
+     * @return 输出流，打开失败时返回 null
+     */
+    CacheOutputStream openOutputStream(String key, int ttl);
+
+    /**
+     * 只查内存中的索引，不读磁盘
+     *
+     * @param key 保存的key
+     * @return key 是否存在，可能包含已过期但尚未清理的 key
+     */
+    boolean contains(String key);
+
+    /**
+     * 移除某个key
+     *
+     * @param key 保存的key
+     * @return 是否移除成功
+     */
+    boolean remove(String key);
+
+    /**
+     * 批量移除，一次加锁
+     *
+     * @param keys 保存的key
+     * @return 移除的条目数
+     */
+    int removeAll(Collection<String> keys);
+
+    /**
+     * @return 当前所有 key 的快照，可能包含已过期但尚未清理的 key
+     */
+    List<String> keys();
+
+    /**
+     * 按过期时间从早到晚移除已过期的数据
+     *
+     * @param maxCount 本次最多移除的条目数
+     * @return 回收的字节数，没有已过期的数据时返回 0
+     */
+    long removeExpired(int maxCount);
+
+    /**
+     * 清除所有数据
+     */
+    void clear();
+
+    /**
+     * 获取 key 对应的独立缓存文件
+     *
+     * @param key 保存的key
+     * @return 缓存文件，数据不是单独存放的文件时返回 null
+     */
+    File file(String key);
+
+    /**
+     * @return 当前缓存占用的字节数
+     */
+    long size();
+
+    /**
+     * @return 当前缓存的条目数
+     */
+    int count();
+}
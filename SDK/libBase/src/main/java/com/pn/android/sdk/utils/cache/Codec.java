@@ -0,0 +1,26 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 缓存内容的编码方式，例如压缩
+ * <p>编码后的内容落盘，编号记录在 {@link EntryHeader} 中，读取时按编号找到对应的编码方式解码，
+ * 所以使用前需要通过 {@link Codecs#register(Codec)} 注册。</p>
+ */
+public interface Codec {
+
+    /**
+     * @return 记录在头部中的编号，1-15，不同的编码方式不能重复
+     */
+    int id();
+
+    byte[] encode(byte[] data) throws IOException;
+
+    byte[] decode(byte[] data) throws IOException;
+
+    /**
+     * 边读边解码
+     */
+    InputStream decode(InputStream in) throws IOException;
+}
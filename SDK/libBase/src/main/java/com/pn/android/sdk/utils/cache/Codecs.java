@@ -0,0 +1,139 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 已注册的编码方式，内置 {@link #deflate()}
+ */
+public final class Codecs {
+
+    /**
+     * deflate 压缩的编号
+     */
+    public static final int DEFLATE = 1;
+
+    private static final int MAX_ID = EntryHeader.CODEC_MASK;
+    private static final Codec[] REGISTRY = new Codec[MAX_ID + 1];
+
+    static {
+        REGISTRY[DEFLATE] = new Deflate(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private Codecs() {
+    }
+
+    /**
+     * @return 默认压缩级别的 deflate 压缩，适合文本
+     */
+    public static Codec deflate() {
+        return REGISTRY[DEFLATE];
+    }
+
+    /**
+     * @param level 压缩级别 0-9，级别越低越快，解码与级别无关
+     * @return deflate 压缩
+     */
+    public static Codec deflate(int level) {
+        return new Deflate(level);
+    }
+
+    /**
+     * 注册编码方式，编号已被其他编码方式占用时抛出 IllegalArgumentException
+     */
+    public static synchronized void register(Codec codec) {
+        int id = codec.id();
+        if (id < 1 || id > MAX_ID) {
+            throw new IllegalArgumentException("codec id must be 1-" + MAX_ID + ": " + id);
+        }
+        Codec registered = REGISTRY[id];
+        if (registered != null && registered.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("codec id " + id + " is already used by " + registered);
+        }
+        if (registered == null) {
+            REGISTRY[id] = codec;
+        }
+    }
+
+    /**
+     * @return 编号对应的编码方式，未注册时返回 null
+     */
+    public static synchronized Codec get(int id) {
+        return id < 1 || id > MAX_ID ? null : REGISTRY[id];
+    }
+
+    /**
+     * 按头部记录的编码方式解码
+     *
+     * @return 解码后的内容，未编码时原样返回，编码方式未注册或解码失败时返回 null
+     */
+    public static byte[] decode(EntryHeader header, byte[] payload) {
+        int id = header.codecId();
+        if (id == 0) {
+            return payload;
+        }
+        Codec codec = get(id);
+        if (codec == null) {
+            return null;
+        }
+        try {
+            return codec.decode(payload);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static class Deflate implements Codec {
+        private final int level;
+
+        Deflate(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public int id() {
+            return DEFLATE;
+        }
+
+        @Override
+        public byte[] encode(byte[] data) throws IOException {
+            Deflater deflater = new Deflater(level);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, 8192);
+                dos.write(data);
+                dos.finish();
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] data) throws IOException {
+            InputStream in = decode(new ByteArrayInputStream(data));
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * 缓存数据的二进制头
+ * <p>固定 {@link #SIZE} 字节，依次为：magic(4) version(1) flags(1) extraLength(2)
+ * createdAt(8) ttl(4) payloadLength(4) checksum(4)。
+ * 只读头部就可以判断是否过期，过期的数据不需要读取内容。</p>
+ * <p>头部之后是 extraLength 字节的附加数据，再之后是 payloadLength 字节的内容。</p>
+ */
+public final class EntryHeader {
+
+    public static final int SIZE = 28;
+    /**
+     * 永不过期
+     */
+    public static final int NO_TTL = -1;
+    /**
+     * flags 的低 4 位为内容的编码方式，0 表示未编码，见 {@link Codecs}
+     */
+    public static final int CODEC_MASK = 0x0F;
+    /**
+     * 保存的时间中包含只用于返回旧数据的部分，{@link #expireAt()} 之前数据不一定新鲜
+     */
+    public static final int FLAG_STALE = 0x10;
+
+    private static final int MAGIC = 0x504E4345;
+    private static final byte VERSION = 1;
+
+    public final int flags;
+    public final int extraLength;
+    /**
+     * 保存的时间点（毫秒）
+     */
+    public final long createdAt;
+    /**
+     * 保存的时间，单位：秒，小于 0 表示永不过期
+     */
+    public final int ttl;
+    public final int payloadLength;
+    /**
+     * 内容的 CRC32
+     */
+    public final int checksum;
+
+    public EntryHeader(int flags, int extraLength, long createdAt, int ttl,
+                       int payloadLength, int checksum) {
+        this.flags = flags;
+        this.extraLength = extraLength;
+        this.createdAt = createdAt;
+        this.ttl = ttl;
+        this.payloadLength = payloadLength;
+        this.checksum = checksum;
+    }
+
+    /**
+     * 为即将保存的内容创建头部
+     *
+     * @param ttl 保存的时间，单位：秒，{@link #NO_TTL} 表示永不过期
+     */
+    public static EntryHeader create(byte[] payload, int ttl) {
+        return create(payload, ttl, 0);
+    }
+
+    /**
+     * 为即将保存的、已编码的内容创建头部
+     *
+     * @param ttl     保存的时间，单位：秒，{@link #NO_TTL} 表示永不过期
+     * @param codecId 内容的编码方式，见 {@link Codec#id()}
+     */
+    public static EntryHeader create(byte[] payload, int ttl, int codecId) {
+        return new EntryHeader(codecId & CODEC_MASK, 0, System.currentTimeMillis(), ttl,
+                payload.length, checksum(payload, 0, payload.length));
+    }
+
+    /**
+     * @return 附加数据长度改为 extraLength 的头部，其余字段不变
+     */
+    public EntryHeader withExtraLength(int extraLength) {
+        if (extraLength < 0 || extraLength > 0xFFFF) {
+            throw new IllegalArgumentException("extraLength out of range: " + extraLength);
+        }
+        return new EntryHeader(flags, extraLength, createdAt, ttl, payloadLength, checksum);
+    }
+
+    /**
+     * @return flags 改为 flags 的头部，其余字段不变
+     */
+    public EntryHeader withFlags(int flags) {
+        return new EntryHeader(flags & 0xFF, extraLength, createdAt, ttl, payloadLength, checksum);
+    }
+
+    /**
+     * @return 过期时间之前是否可能已经不新鲜，见 {@link #FLAG_STALE}
+     */
+    public boolean hasStaleWindow() {
+        return (flags & FLAG_STALE) != 0;
+    }
+
+    /**
+     * 解析头部
+     *
+     * @return 不是本格式的数据时返回 null
+     */
+    public static EntryHeader parse(byte[] data, int offset) {
+        if (data.length - offset < SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, SIZE);
+        if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            return null;
+        }
+        int flags = buffer.get() & 0xFF;
+        int extraLength = buffer.getShort() & 0xFFFF;
+        long createdAt = buffer.getLong();
+        int ttl = buffer.getInt();
+        int payloadLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (payloadLength < 0) {
+            return null;
+        }
+        return new EntryHeader(flags, extraLength, createdAt, ttl, payloadLength, checksum);
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE)
+                .putInt(MAGIC)
+                .put(VERSION)
+                .put((byte) flags)
+                .putShort((short) extraLength)
+                .putLong(createdAt)
+                .putInt(ttl)
+                .putInt(payloadLength)
+                .putInt(checksum)
+                .array();
+    }
+
+    /**
+     * @return 内容的编码方式，0 表示未编码
+     */
+    public int codecId() {
+        return flags & CODEC_MASK;
+    }
+
+    /**
+     * @return 头部、附加数据和内容的总字节数
+     */
+    public int entryLength() {
+        return SIZE + extraLength + payloadLength;
+    }
+
+    /**
+     * @return 过期的时间点（毫秒），0 表示永不过期
+     */
+    public long expireAt() {
+        return ttl < 0 ? 0 : createdAt + ttl * 1000L;
+    }
+
+    public boolean isExpired() {
+        return ttl >= 0 && System.currentTimeMillis() > expireAt();
+    }
+
+    /**
+     * 校验内容是否完整
+     */
+    public boolean verify(byte[] payload) {
+        return payload.length == payloadLength
+                && checksum(payload, 0, payload.length) == checksum;
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return (int) crc32.getValue();
+    }
+}
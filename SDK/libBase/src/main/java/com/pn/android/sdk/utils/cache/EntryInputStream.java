@@ -0,0 +1,171 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 逐段读取一条缓存数据的内容
+ * <p>只读取内容部分，读到末尾时校验 CRC32，不一致时抛出 IOException。编码过的内容边读边解码。
+ * 打开之后文件被替换或删除不影响已打开的流，读到的始终是打开时的数据。</p>
+ */
+public class EntryInputStream extends FilterInputStream {
+
+    private final EntryHeader header;
+    private final CRC32 crc32 = new CRC32();
+    private long remaining;
+
+    private EntryInputStream(InputStream in, EntryHeader header) {
+        super(in);
+        this.header = header;
+        this.remaining = header.payloadLength;
+    }
+
+    /**
+     * 打开一个单独存放的缓存文件
+     *
+     * @param key 保存的key，与文件中记录的原始 key 不一致时视为不存在
+     * @return 内容的输入流，文件不存在、已过期或损坏时返回 null
+     */
+    public static InputStream open(File file, byte[] key) throws IOException {
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        boolean opened = false;
+        try {
+            byte[] head = new byte[EntryHeader.SIZE];
+            int read = readFully(in, head);
+            EntryHeader header = read == head.length ? EntryHeader.parse(head, 0) : null;
+            long length = in.getChannel().size();
+            if (header == null || header.entryLength() != length) {
+                // 旧格式的数据一次读出
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    CacheEntry entry = CacheEntry.read(raf, 0, (int) raf.length());
+                    byte[] payload = entry == null || entry.isExpired() ? null : Codecs.decode(entry.header, entry.payload);
+                    return payload == null ? null : new ByteArrayInputStream(payload);
+                } finally {
+                    raf.close();
+                }
+            }
+            if (header.isExpired()) {
+                return null;
+            }
+            byte[] extra = new byte[header.extraLength];
+            if (readFully(in, extra) != extra.length
+                    || (extra.length > 0 && !Arrays.equals(extra, key))) {
+                return null;
+            }
+            InputStream stream = new EntryInputStream(new BufferedInputStream(in), header);
+            if (header.codecId() != 0) {
+                Codec codec = Codecs.get(header.codecId());
+                if (codec == null) {
+                    return null;
+                }
+                stream = codec.decode(stream);
+            }
+            opened = true;
+            return stream;
+        } finally {
+            if (!opened) {
+                in.close();
+            }
+        }
+    }
+
+    public EntryHeader header() {
+        return header;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int b = in.read();
+        if (b == -1) {
+            throw new IOException("unexpected end of cache entry");
+        }
+        crc32.update(b);
+        consumed(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int count = in.read(b, off, (int) Math.min(len, remaining));
+        if (count == -1) {
+            throw new IOException("unexpected end of cache entry");
+        }
+        crc32.update(b, off, count);
+        consumed(count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 跳过的内容同样需要计算校验和
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void consumed(int count) throws IOException {
+        remaining -= count;
+        if (remaining == 0 && (int) crc32.getValue() != header.checksum) {
+            throw new IOException("cache entry checksum mismatch");
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int count = in.read(buffer, total, buffer.length - total);
+            if (count == -1) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,254 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 内置的缓存淘汰策略
+ */
+public final class EvictionPolicies {
+
+    private EvictionPolicies() {
+    }
+
+    /**
+     * 最近最少使用，读写都是 O(1)
+     */
+    public static <K> EvictionPolicy<K> lru() {
+        return new Lru<>();
+    }
+
+    /**
+     * 使用次数最少的先淘汰，次数相同时淘汰最早进入该次数的条目
+     */
+    public static <K> EvictionPolicy<K> lfu() {
+        return new Lfu<>();
+    }
+
+    /**
+     * 占用空间最大的先淘汰，用最少的淘汰次数腾出空间
+     */
+    public static <K> EvictionPolicy<K> size() {
+        return new Size<>();
+    }
+
+    /**
+     * 最先过期的先淘汰，没有设置过期时间的条目按最近最少使用淘汰
+     */
+    public static <K> EvictionPolicy<K> ttl() {
+        return new Ttl<>();
+    }
+
+    private static class Lru<K> implements EvictionPolicy<K> {
+        // accessOrder 为 true，get 会把条目移到链表尾部
+        private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+        @Override
+        public void onPut(K key, long size, long expireAt) {
+            order.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public void onAccess(K key) {
+            order.get(key);
+        }
+
+        @Override
+        public void onRemove(K key) {
+            order.remove(key);
+        }
+
+        @Override
+        public K victim() {
+            Iterator<K> iterator = order.keySet().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public void clear() {
+            order.clear();
+        }
+    }
+
+    private static class Lfu<K> implements EvictionPolicy<K> {
+        private final Map<K, Integer> frequencies = new HashMap<>();
+        // 使用次数 → 该次数下的条目，按进入顺序排列
+        private final TreeMap<Integer, LinkedHashSet<K>> buckets = new TreeMap<>();
+
+        @Override
+        public void onPut(K key, long size, long expireAt) {
+            if (frequencies.containsKey(key)) {
+                onAccess(key);
+            } else {
+                frequencies.put(key, 1);
+                bucket(1).add(key);
+            }
+        }
+
+        @Override
+        public void onAccess(K key) {
+            Integer frequency = frequencies.get(key);
+            if (frequency == null) {
+                return;
+            }
+            unlink(key, frequency);
+            frequencies.put(key, frequency + 1);
+            bucket(frequency + 1).add(key);
+        }
+
+        @Override
+        public void onRemove(K key) {
+            Integer frequency = frequencies.remove(key);
+            if (frequency != null) {
+                unlink(key, frequency);
+            }
+        }
+
+        @Override
+        public K victim() {
+            Map.Entry<Integer, LinkedHashSet<K>> lowest = buckets.firstEntry();
+            return lowest == null ? null : lowest.getValue().iterator().next();
+        }
+
+        @Override
+        public void clear() {
+            frequencies.clear();
+            buckets.clear();
+        }
+
+        private LinkedHashSet<K> bucket(int frequency) {
+            LinkedHashSet<K> bucket = buckets.get(frequency);
+            if (bucket == null) {
+                bucket = new LinkedHashSet<>();
+                buckets.put(frequency, bucket);
+            }
+            return bucket;
+        }
+
+        private void unlink(K key, int frequency) {
+            LinkedHashSet<K> bucket = buckets.get(frequency);
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                buckets.remove(frequency);
+            }
+        }
+    }
+
+    private static class Size<K> implements EvictionPolicy<K> {
+        private final Map<K, Node<K>> nodes = new HashMap<>();
+        private final TreeSet<Node<K>> bySize = new TreeSet<>(new Comparator<Node<K>>() {
+            @Override
+            public int compare(Node<K> a, Node<K> b) {
+                if (a.weight != b.weight) {
+                    return a.weight > b.weight ? -1 : 1;
+                }
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+            }
+        });
+        private long sequence;
+
+        @Override
+        public void onPut(K key, long size, long expireAt) {
+            onRemove(key);
+            Node<K> node = new Node<>(key, size, sequence++);
+            nodes.put(key, node);
+            bySize.add(node);
+        }
+
+        @Override
+        public void onAccess(K key) {
+        }
+
+        @Override
+        public void onRemove(K key) {
+            Node<K> node = nodes.remove(key);
+            if (node != null) {
+                bySize.remove(node);
+            }
+        }
+
+        @Override
+        public K victim() {
+            return bySize.isEmpty() ? null : bySize.first().key;
+        }
+
+        @Override
+        public void clear() {
+            nodes.clear();
+            bySize.clear();
+        }
+    }
+
+    private static class Ttl<K> implements EvictionPolicy<K> {
+        private final Map<K, Node<K>> expiring = new HashMap<>();
+        private final TreeSet<Node<K>> byExpireAt = new TreeSet<>(new Comparator<Node<K>>() {
+            @Override
+            public int compare(Node<K> a, Node<K> b) {
+                if (a.weight != b.weight) {
+                    return a.weight < b.weight ? -1 : 1;
+                }
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+            }
+        });
+        private final Lru<K> permanent = new Lru<>();
+        private long sequence;
+
+        @Override
+        public void onPut(K key, long size, long expireAt) {
+            onRemove(key);
+            if (expireAt > 0) {
+                Node<K> node = new Node<>(key, expireAt, sequence++);
+                expiring.put(key, node);
+                byExpireAt.add(node);
+            } else {
+                permanent.onPut(key, size, expireAt);
+            }
+        }
+
+        @Override
+        public void onAccess(K key) {
+            permanent.onAccess(key);
+        }
+
+        @Override
+        public void onRemove(K key) {
+            Node<K> node = expiring.remove(key);
+            if (node != null) {
+                byExpireAt.remove(node);
+            } else {
+                permanent.onRemove(key);
+            }
+        }
+
+        @Override
+        public K victim() {
+            return byExpireAt.isEmpty() ? permanent.victim() : byExpireAt.first().key;
+        }
+
+        @Override
+        public void clear() {
+            expiring.clear();
+            byExpireAt.clear();
+            permanent.clear();
+        }
+    }
+
+    private static class Node<K> {
+        final K key;
+        // Size 中是字节数，Ttl 中是过期时间点
+        final long weight;
+        final long sequence;
+
+        Node(K key, long weight, long sequence) {
+            this.key = key;
+            this.weight = weight;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.pn.android.sdk.utils.cache;
+
+/**
+ * 缓存淘汰策略
+ * <p>记录每个条目的使用情况，容量不足时给出下一个应该淘汰的条目。
+ * 实现类不需要线程安全，由存储引擎加锁调用；每个方法都应该是常数或对数时间。</p>
+ *
+ * @param <K> 条目的标识
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * 新增或覆盖一个条目
+     *
+     * @param key      条目的标识
+     * @param size     条目的字节数
+     * @param expireAt 过期的时间点（毫秒），0 表示永不过期
+     */
+    void onPut(K key, long size, long expireAt);
+
+    /**
+     * 读取了一个条目
+     */
+    void onAccess(K key);
+
+    /**
+     * 移除了一个条目
+     */
+    void onRemove(K key);
+
+    /**
+     * @return 下一个应该淘汰的条目，没有条目时返回 null
+     */
+    K victim();
+
+    /**
+     * 清除所有记录
+     */
+    void clear();
+}
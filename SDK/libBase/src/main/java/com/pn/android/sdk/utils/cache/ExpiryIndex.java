@@ -0,0 +1,107 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 按过期时间排序的索引
+ * <p>只记录设置了过期时间的条目，可以按过期时间从早到晚取出已过期的条目，不需要遍历全部数据。
+ * 不是线程安全的，由存储引擎加锁调用；增删都是对数时间。</p>
+ *
+ * @param <K> 条目的标识
+ */
+public final class ExpiryIndex<K> {
+
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private final TreeSet<Node<K>> byExpireAt = new TreeSet<>(new Comparator<Node<K>>() {
+        @Override
+        public int compare(Node<K> a, Node<K> b) {
+            if (a.expireAt != b.expireAt) {
+                return a.expireAt < b.expireAt ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    });
+    private long sequence;
+
+    /**
+     * 新增或覆盖一个条目
+     *
+     * @param expireAt 过期的时间点（毫秒），0 表示永不过期，不记录
+     */
+    public void put(K key, long expireAt) {
+        remove(key);
+        if (expireAt > 0) {
+            Node<K> node = new Node<>(key, expireAt, sequence++);
+            nodes.put(key, node);
+            byExpireAt.add(node);
+        }
+    }
+
+    public void remove(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            byExpireAt.remove(node);
+        }
+    }
+
+    /**
+     * 按过期时间从早到晚取出已过期的条目，不从索引中移除
+     *
+     * @param now      当前时间（毫秒）
+     * @param maxCount 最多取出的条目数
+     */
+    public List<K> expired(long now, int maxCount) {
+        List<K> expired = new ArrayList<>();
+        Iterator<Node<K>> iterator = byExpireAt.iterator();
+        while (expired.size() < maxCount && iterator.hasNext()) {
+            Node<K> node = iterator.next();
+            if (node.expireAt > now) {
+                break;
+            }
+            expired.add(node.key);
+        }
+        return expired;
+    }
+
+    /**
+     * @return 条目过期的时间点（毫秒），不在索引中时返回 0
+     */
+    public long expireAt(K key) {
+        Node<K> node = nodes.get(key);
+        return node == null ? 0 : node.expireAt;
+    }
+
+    /**
+     * @return 最早过期的时间点（毫秒），没有条目时返回 0
+     */
+    public long nextExpireAt() {
+        return byExpireAt.isEmpty() ? 0 : byExpireAt.first().expireAt;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public void clear() {
+        nodes.clear();
+        byExpireAt.clear();
+    }
+
+    private static class Node<K> {
+        final K key;
+        final long expireAt;
+        final long sequence;
+
+        Node(K key, long expireAt, long sequence) {
+            this.key = key;
+            this.expireAt = expireAt;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定期清理已过期数据
+ * <p>每轮按过期时间从早到晚最多移除 maxCount 条，不会长时间占用存储引擎的锁；
+ * 一轮有回收时很快开始下一轮，直到没有已过期的数据，再按间隔等待。</p>
+ * <p>所有实例共用一个后台线程。</p>
+ */
+public class ExpirySweeper {
+
+    // 上一轮有回收时，下一轮的等待时间
+    private static final long BACKLOG_DELAY = 100;
+
+    private static ScheduledExecutorService sExecutor;
+
+    private final CacheStore store;
+    private final long intervalMillis;
+    private final int maxCount;
+
+    private final AtomicLong passCount = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private volatile long lastSweepAt;
+
+    private ScheduledFuture<?> future;
+    private boolean stopped = true;
+
+    private final Runnable sweepTask = new Runnable() {
+        @Override
+        public void run() {
+            long reclaimed = 0;
+            try {
+                reclaimed = sweep();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            schedule(reclaimed > 0 ? BACKLOG_DELAY : intervalMillis);
+        }
+    };
+
+    /**
+     * @param store          清理的存储引擎
+     * @param intervalMillis 没有已过期数据时，两轮之间的间隔
+     * @param maxCount       每轮最多移除的条目数
+     */
+    public ExpirySweeper(CacheStore store, long intervalMillis, int maxCount) {
+        if (intervalMillis <= 0 || maxCount <= 0) {
+            throw new IllegalArgumentException("intervalMillis and maxCount must be positive");
+        }
+        this.store = store;
+        this.intervalMillis = intervalMillis;
+        this.maxCount = maxCount;
+    }
+
+    public synchronized void start() {
+        if (stopped) {
+            stopped = false;
+            schedule(intervalMillis);
+        }
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * 在当前线程执行一轮清理
+     *
+     * @return 回收的字节数
+     */
+    public long sweep() {
+        long reclaimed = store.removeExpired(maxCount);
+        passCount.incrementAndGet();
+        reclaimedBytes.addAndGet(reclaimed);
+        lastSweepAt = System.currentTimeMillis();
+        return reclaimed;
+    }
+
+    /**
+     * @return 执行过的轮数
+     */
+    public long passCount() {
+        return passCount.get();
+    }
+
+    /**
+     * @return 累计回收的字节数
+     */
+    public long reclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    /**
+     * @return 上一轮结束的时间点（毫秒），没有执行过时返回 0
+     */
+    public long lastSweepAt() {
+        return lastSweepAt;
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (!stopped) {
+            future = executor().schedule(sweepTask, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CacheUtil-sweeper");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
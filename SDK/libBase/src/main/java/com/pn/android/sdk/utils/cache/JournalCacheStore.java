@@ -0,0 +1,621 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 日志式缓存存储引擎
+ * <p>所有数据顺序追加写入段文件(segment)，内存中维护 key → (段, 偏移, 长度) 的索引，
+ * 大量小数据不再是一个 key 一个文件。</p>
+ * <p>启动时按顺序回放段文件重建索引，最后一个段用 CRC 校验并截掉写了一半的记录；
+ * 废弃数据超过一半时把旧段中仍然有效的数据合并到新段，然后删除旧段。</p>
+ */
+public class JournalCacheStore implements CacheStore {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int RECORD_MAGIC = 0x504E4A4C;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    // magic(4) + type(1) + keyLength(4) + valueLength(4) + crc(4)
+    private static final int RECORD_HEADER_SIZE = 17;
+
+    private static final long SEGMENT_SIZE = 4 * 1024 * 1024; // 4 mb
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024; // 1 mb
+
+    private final File dir;
+    private final long sizeLimit;
+    private final int countLimit;
+    private final EvictionPolicy<String> evictionPolicy;
+    private final CacheStats stats;
+    private final Map<String, Location> index = new HashMap<>();
+    private final ExpiryIndex<String> expiry = new ExpiryIndex<>();
+    private final TreeMap<Integer, RandomAccessFile> segments = new TreeMap<>();
+
+    private RandomAccessFile activeSegment;
+    private int activeId;
+    private long activeLength;
+    // 有效数据的字节数（只算value）
+    private long liveBytes;
+    // 有效记录的字节数（包含记录头和key）
+    private long liveRecordBytes;
+    // 所有段文件的字节数
+    private long totalBytes;
+
+    public JournalCacheStore(File dir, long sizeLimit, int countLimit,
+                             EvictionPolicy<String> evictionPolicy) {
+        this(dir, sizeLimit, countLimit, evictionPolicy, new CacheStats());
+    }
+
+    /**
+     * @param stats 记录淘汰和过期移除
+     */
+    public JournalCacheStore(File dir, long sizeLimit, int countLimit,
+                             EvictionPolicy<String> evictionPolicy, CacheStats stats) {
+        this.dir = dir;
+        this.sizeLimit = sizeLimit;
+        this.countLimit = countLimit;
+        this.evictionPolicy = evictionPolicy;
+        this.stats = stats;
+        try {
+            load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            reset();
+        }
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        evictionPolicy.onAccess(key);
+        try {
+            return CacheEntry.read(segments.get(location.segment), location.offset, location.length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 按段文件和偏移排序后读取，同一个段内顺序读
+     */
+    @Override
+    public synchronized Map<String, CacheEntry> getAll(Collection<String> keys) {
+        List<Map.Entry<String, Location>> found = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Location location = index.get(key);
+            if (location != null) {
+                found.add(new AbstractMap.SimpleEntry<>(key, location));
+            }
+        }
+        Collections.sort(found, new Comparator<Map.Entry<String, Location>>() {
+            @Override
+            public int compare(Map.Entry<String, Location> a, Map.Entry<String, Location> b) {
+                Location x = a.getValue();
+                Location y = b.getValue();
+                if (x.segment != y.segment) {
+                    return x.segment < y.segment ? -1 : 1;
+                }
+                return x.offset < y.offset ? -1 : (x.offset == y.offset ? 0 : 1);
+            }
+        });
+        Map<String, CacheEntry> result = new HashMap<>();
+        for (Map.Entry<String, Location> entry : found) {
+            Location location = entry.getValue();
+            evictionPolicy.onAccess(entry.getKey());
+            try {
+                CacheEntry value = CacheEntry.read(segments.get(location.segment), location.offset, location.length);
+                if (value != null) {
+                    result.put(entry.getKey(), value);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean put(String key, EntryHeader header, byte[] payload) {
+        boolean written = putLocked(key, header, payload);
+        compactIfNeeded();
+        return written;
+    }
+
+    /**
+     * 一次加锁依次追加，全部写完之后才检查是否需要合并
+     */
+    @Override
+    public synchronized boolean putAll(Map<String, CacheEntry> entries) {
+        boolean written = true;
+        for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+            if (!putLocked(entry.getKey(), entry.getValue().header, entry.getValue().payload)) {
+                written = false;
+            }
+        }
+        compactIfNeeded();
+        return written;
+    }
+
+    /**
+     * @return 是否写入成功，失败时 key 不再可读
+     */
+    private boolean putLocked(String key, EntryHeader header, byte[] payload) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        Location old = index.remove(key);
+        if (old != null) {
+            release(old);
+            evictionPolicy.onRemove(key);
+            expiry.remove(key);
+        }
+        try {
+            trimToSize(header.entryLength());
+            Location location = append(TYPE_PUT, keyBytes, header.toBytes(), payload);
+            index.put(key, location);
+            evictionPolicy.onPut(key, location.length, header.expireAt());
+            expiry.put(key, header.expireAt());
+            liveBytes += location.length;
+            liveRecordBytes += location.recordSize;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (needCompact()) {
+            compact();
+        }
+    }
+
+    /**
+     * 段文件中的数据较小，直接读出后包装成流
+     */
+    @Override
+    public InputStream openInputStream(String key) {
+        CacheEntry entry = get(key);
+        if (entry == null || entry.isExpired()) {
+            return null;
+        }
+        byte[] payload = Codecs.decode(entry.header, entry.payload);
+        return payload == null ? null : new ByteArrayInputStream(payload);
+    }
+
+    /**
+     * 映射段文件中对应的区域，合并之后旧段文件被删除也不影响已返回的 ByteBuffer
+     */
+    @Override
+    public synchronized ByteBuffer map(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        evictionPolicy.onAccess(key);
+        try {
+            return CacheEntry.map(segments.get(location.segment), location.offset, location.length, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 内容先写入内存，关闭时作为一条记录追加
+     */
+    @Override
+    public CacheOutputStream openOutputStream(String key, int ttl) {
+        return CacheOutputStream.buffered(this, key, ttl);
+    }
+
+    @Override
+    public synchronized int removeAll(Collection<String> keys) {
+        int removed = 0;
+        for (String key : keys) {
+            if (remove(key)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public synchronized List<String> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    @Override
+    public synchronized boolean remove(String key) {
+        Location location = index.remove(key);
+        if (location == null) {
+            return false;
+        }
+        release(location);
+        evictionPolicy.onRemove(key);
+        expiry.remove(key);
+        try {
+            append(TYPE_DELETE, key.getBytes(UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized long removeExpired(int maxCount) {
+        long reclaimed = 0;
+        for (String key : expiry.expired(System.currentTimeMillis(), maxCount)) {
+            Location location = index.get(key);
+            if (location != null && remove(key)) {
+                reclaimed += location.length;
+                stats.recordRemoval(CacheStats.CAUSE_EXPIRED, location.length);
+            }
+        }
+        return reclaimed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        reset();
+    }
+
+    @Override
+    public File file(String key) {
+        return null;
+    }
+
+    @Override
+    public synchronized long size() {
+        return liveBytes;
+    }
+
+    @Override
+    public synchronized int count() {
+        return index.size();
+    }
+
+    /**
+     * 合并段文件
+     * <p>新建一个活动段，把之前所有段中仍然有效的数据复制过去，然后删除之前的段。
+     * 因为之前的段全部删除，删除标记不需要复制。</p>
+     */
+    public synchronized void compact() {
+        try {
+            rollSegment();
+            int firstId = activeId;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment < firstId) {
+                    byte[] value = read(location);
+                    entry.setValue(append(TYPE_PUT, entry.getKey().getBytes(UTF_8), value));
+                }
+            }
+            activeSegment.getFD().sync();
+
+            List<Integer> obsolete = new ArrayList<>(segments.headMap(firstId).keySet());
+            for (Integer id : obsolete) {
+                RandomAccessFile segment = segments.remove(id);
+                totalBytes -= segment.length();
+                segment.close();
+                segmentFile(id).delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean needCompact() {
+        return totalBytes > COMPACT_MIN_SIZE && totalBytes - liveRecordBytes > totalBytes / 2;
+    }
+
+    /**
+     * 超出容量或数量限制时，按淘汰策略移除数据
+     */
+    private void trimToSize(int incoming) throws IOException {
+        if (liveBytes + incoming > sizeLimit || index.size() + 1 > countLimit) {
+            // 已过期的数据先腾出空间，不够时才淘汰有效的数据
+            for (String key : expiry.expired(System.currentTimeMillis(), Integer.MAX_VALUE)) {
+                if (liveBytes + incoming <= sizeLimit && index.size() + 1 <= countLimit) {
+                    break;
+                }
+                Location location = index.get(key);
+                if (location != null && remove(key)) {
+                    stats.recordRemoval(CacheStats.CAUSE_EXPIRED, location.length);
+                }
+            }
+        }
+        while (liveBytes + incoming > sizeLimit || index.size() + 1 > countLimit) {
+            long start = System.nanoTime();
+            String victim = evictionPolicy.victim();
+            if (victim == null) {
+                break;
+            }
+            evictionPolicy.onRemove(victim);
+            expiry.remove(victim);
+            Location location = index.remove(victim);
+            if (location != null) {
+                release(location);
+                append(TYPE_DELETE, victim.getBytes(UTF_8));
+                stats.recordEviction(location.length, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void release(Location location) {
+        liveBytes -= location.length;
+        liveRecordBytes -= location.recordSize;
+    }
+
+    private byte[] read(Location location) throws IOException {
+        RandomAccessFile segment = segments.get(location.segment);
+        byte[] value = new byte[location.length];
+        segment.seek(location.offset);
+        segment.readFully(value);
+        return value;
+    }
+
+    /**
+     * 追加一条记录到活动段，记录头、key、value 的各部分一次写入，不拼接数组
+     */
+    private Location append(byte type, byte[] key, byte[]... value) throws IOException {
+        if (activeLength >= SEGMENT_SIZE) {
+            rollSegment();
+        }
+        int valueLength = 0;
+        for (byte[] part : value) {
+            valueLength += part.length;
+        }
+        int recordSize = RECORD_HEADER_SIZE + key.length + valueLength;
+        ByteBuffer[] buffers = new ByteBuffer[value.length + 2];
+        buffers[0] = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        buffers[0].putInt(RECORD_MAGIC)
+                .put(type)
+                .putInt(key.length)
+                .putInt(valueLength)
+                .putInt(checksum(key, value))
+                .flip();
+        buffers[1] = ByteBuffer.wrap(key);
+        for (int i = 0; i < value.length; i++) {
+            buffers[i + 2] = ByteBuffer.wrap(value[i]);
+        }
+        FileChannel channel = activeSegment.getChannel();
+        channel.position(activeLength);
+        long remaining = recordSize;
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+
+        Location location = new Location(activeId,
+                activeLength + RECORD_HEADER_SIZE + key.length, valueLength, recordSize);
+        activeLength += recordSize;
+        totalBytes += recordSize;
+        return location;
+    }
+
+    /**
+     * 封存当前活动段并新建一个活动段，封存的段落盘后不会再被修改
+     */
+    private void rollSegment() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.getFD().sync();
+        }
+        // 新段创建成功后才切换，失败时下次写入重新尝试同一个编号
+        RandomAccessFile segment = new RandomAccessFile(segmentFile(activeId + 1), "rw");
+        segment.setLength(0);
+        activeId++;
+        activeSegment = segment;
+        activeLength = 0;
+        segments.put(activeId, activeSegment);
+    }
+
+    /**
+     * 按顺序回放所有段文件，重建索引
+     */
+    private void load() throws IOException {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return segmentId(file) > 0;
+            }
+        });
+        TreeMap<Integer, File> sorted = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                sorted.put(segmentId(file), file);
+            }
+        }
+        for (Map.Entry<Integer, File> entry : sorted.entrySet()) {
+            int id = entry.getKey();
+            boolean last = id == sorted.lastKey();
+            RandomAccessFile segment = new RandomAccessFile(entry.getValue(), "rw");
+            long validLength = replay(id, entry.getValue(), last);
+            if (validLength < segment.length()) {
+                // 写了一半的记录
+                segment.setLength(validLength);
+            }
+            segments.put(id, segment);
+            totalBytes += validLength;
+            activeId = id;
+            activeSegment = segment;
+            activeLength = validLength;
+        }
+        if (activeSegment == null) {
+            rollSegment();
+        }
+    }
+
+    /**
+     * 回放一个段文件
+     *
+     * @param verify 是否校验 value 的 CRC，只有最后一个段可能有写了一半的记录
+     * @return 段文件中有效数据的长度
+     */
+    private long replay(int id, File file, boolean verify) throws IOException {
+        long length = file.length();
+        long offset = 0;
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            while (offset + RECORD_HEADER_SIZE <= length) {
+                if (in.readInt() != RECORD_MAGIC) {
+                    break;
+                }
+                byte type = in.readByte();
+                int keyLength = in.readInt();
+                int valueLength = in.readInt();
+                int crc = in.readInt();
+                int recordSize = RECORD_HEADER_SIZE + keyLength + valueLength;
+                if (keyLength < 0 || valueLength < 0 || offset + recordSize > length) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                EntryHeader header;
+                if (verify) {
+                    byte[] value = new byte[valueLength];
+                    in.readFully(value);
+                    if (checksum(key, value) != crc) {
+                        break;
+                    }
+                    header = EntryHeader.parse(value, 0);
+                } else {
+                    // 只读出头部，取得过期时间
+                    byte[] head = new byte[Math.min(valueLength, EntryHeader.SIZE)];
+                    in.readFully(head);
+                    in.skipBytes(valueLength - head.length);
+                    header = EntryHeader.parse(head, 0);
+                }
+                long expireAt = header == null ? 0 : header.expireAt();
+
+                String k = new String(key, UTF_8);
+                Location old = index.remove(k);
+                if (old != null) {
+                    release(old);
+                    evictionPolicy.onRemove(k);
+                    expiry.remove(k);
+                }
+                if (type == TYPE_PUT) {
+                    Location location = new Location(id,
+                            offset + RECORD_HEADER_SIZE + keyLength, valueLength, recordSize);
+                    index.put(k, location);
+                    evictionPolicy.onPut(k, location.length, expireAt);
+                    expiry.put(k, expireAt);
+                    liveBytes += location.length;
+                    liveRecordBytes += location.recordSize;
+                }
+                offset += recordSize;
+            }
+        } finally {
+            in.close();
+        }
+        return offset;
+    }
+
+    /**
+     * 关闭并删除所有段文件，重新开始
+     */
+    private void reset() {
+        for (RandomAccessFile segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        segments.clear();
+        index.clear();
+        evictionPolicy.clear();
+        expiry.clear();
+        liveBytes = 0;
+        liveRecordBytes = 0;
+        totalBytes = 0;
+        activeSegment = null;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (segmentId(file) > 0) {
+                    file.delete();
+                }
+            }
+        }
+        try {
+            rollSegment();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private File segmentFile(int id) {
+        return new File(dir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+    }
+
+    private static int segmentId(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int checksum(byte[] key, byte[]... value) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(key);
+        for (byte[] part : value) {
+            crc32.update(part);
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * 数据在段文件中的位置
+     */
+    private static class Location {
+        final int segment;
+        final long offset;
+        final int length;
+        final int recordSize;
+
+        Location(int segment, long offset, int length, int recordSize) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按字节数限制大小的内存缓存
+ * <p>超出容量时淘汰最近最少使用的条目，过期的条目在读取时移除。容量为 0 时不缓存任何数据。</p>
+ *
+ * @param <V> 缓存的数据类型
+ */
+public abstract class MemoryCache<V> {
+
+    // accessOrder 为 true，迭代顺序即最近最少使用的顺序
+    private final LinkedHashMap<String, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSize;
+    private long size;
+    private long hitCount;
+    private long missCount;
+
+    public MemoryCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 计算数据占用的字节数
+     */
+    protected abstract int sizeOf(V value);
+
+    /**
+     * 读取数据
+     *
+     * @return 数据，不存在或已过期时返回 null
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (entry.expireAt > 0 && System.currentTimeMillis() > entry.expireAt) {
+            map.remove(key);
+            size -= entry.size;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * 保存数据，单个数据超过容量时不缓存
+     *
+     * @param expireAt 过期的时间点（毫秒），0 表示永不过期
+     */
+    public synchronized void put(String key, V value, long expireAt) {
+        remove(key);
+        if (value == null || maxSize <= 0) {
+            return;
+        }
+        int valueSize = sizeOf(value);
+        if (valueSize > maxSize) {
+            return;
+        }
+        map.put(key, new Entry<>(value, valueSize, expireAt));
+        size += valueSize;
+        trimToSize();
+    }
+
+    public synchronized V remove(String key) {
+        Entry<V> entry = map.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        size -= entry.size;
+        return entry.value;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    /**
+     * @return 是否会缓存数据
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry<V>>> iterator = map.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry<V> eldest = iterator.next().getValue();
+            iterator.remove();
+            size -= eldest.size;
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final int size;
+        final long expireAt;
+
+        Entry(V value, int size, long expireAt) {
+            this.value = value;
+            this.size = size;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.pn.android.sdk.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 写后缓存存储
+ * <p>写入和移除先放进内存中的待写队列，同一个 key 的多次写入只保留最后一次，
+ * 后台线程在到达时间或字节数阈值时批量写入被包装的存储引擎。读取时先查待写队列。</p>
+ * <p>调用方线程不做任何磁盘读写，移除操作同样异步执行。一批数据写入失败时放回待写队列，稍后重新写入。</p>
+ */
+public class WriteBehindStore implements CacheStore {
+    // 一批数据写入失败后重新放回待写队列的次数，超过后放弃这一批
+    private static final int MAX_RETRIES = 3;
+    // clear() 等待写入线程清除数据的最长时间
+    private static final long CLEAR_TIMEOUT_MILLIS = 5000;
+
+    private final CacheStore delegate;
+    private final long delayMillis;
+    private final long maxPendingBytes;
+    private final ScheduledExecutorService writer;
+
+    // 等待写入的数据，value 为 null 表示移除
+    private LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    // 正在写入的一批数据，写完之前读取仍然需要看到
+    private Map<String, Pending> flushing = new LinkedHashMap<>();
+    private long pendingBytes;
+    private boolean scheduled;
+    // 连续写入失败的次数
+    private int failures;
+    // 每次 clear() 加一，清除之前取出的一批数据失败后不再放回
+    private int generation;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+
+    /**
+     * 在写入线程上执行，把当前的待写数据作为一批写入
+     *
+     * @return 是否写入成功，没有待写数据时为 true
+     */
+    private boolean flushPending() {
+        Map<String, Pending> batch;
+        int batchGeneration;
+        synchronized (this) {
+            scheduled = false;
+            if (pending.isEmpty()) {
+                return true;
+            }
+            batchGeneration = generation;
+            batch = pending;
+            flushing = batch;
+            pending = new LinkedHashMap<>();
+            pendingBytes = 0;
+        }
+        // 同一个 key 在一批中只出现一次，写入和移除分开各批量执行一次
+        Map<String, CacheEntry> puts = new LinkedHashMap<>();
+        List<String> removes = new ArrayList<>();
+        for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+            Pending value = entry.getValue();
+            // 等待期间已过期的数据不再写入
+            if (value.payload == null || value.header.isExpired()) {
+                removes.add(entry.getKey());
+            } else {
+                puts.put(entry.getKey(), new CacheEntry(value.header, value.payload));
+            }
+        }
+        boolean written = false;
+        try {
+            if (!removes.isEmpty()) {
+                delegate.removeAll(removes);
+            }
+            // 存储引擎内部处理写入失败，通过返回值告知
+            written = puts.isEmpty() || delegate.putAll(puts);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                flushing = new LinkedHashMap<>();
+                if (written || ++failures > MAX_RETRIES || batchGeneration != generation) {
+                    failures = 0;
+                } else {
+                    retry(batch);
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @param delegate        实际写入的存储引擎
+     * @param delayMillis     第一次写入后最多等待多久批量落盘
+     * @param maxPendingBytes 待写数据超过该字节数时立即落盘
+     */
+    public WriteBehindStore(CacheStore delegate, long delayMillis, long maxPendingBytes) {
+        this.delegate = delegate;
+        this.delayMillis = delayMillis;
+        this.maxPendingBytes = maxPendingBytes;
+        this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CacheUtil-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        synchronized (this) {
+            Pending value = pending.get(key);
+            if (value == null) {
+                value = flushing.get(key);
+            }
+            if (value != null) {
+                if (value.payload == null) {
+                    return null;
+                }
+                return new CacheEntry(value.header,
+                        value.header.isExpired() ? null : value.payload);
+            }
+        }
+        return delegate.get(key);
+    }
+
+    @Override
+    public Map<String, CacheEntry> getAll(Collection<String> keys) {
+        Map<String, CacheEntry> result = new HashMap<>();
+        List<String> missing = new ArrayList<>(keys.size());
+        synchronized (this) {
+            for (String key : keys) {
+                Pending value = pending.get(key);
+                if (value == null) {
+                    value = flushing.get(key);
+                }
+                if (value == null) {
+                    missing.add(key);
+                } else if (value.payload != null) {
+                    result.put(key, new CacheEntry(value.header,
+                            value.header.isExpired() ? null : value.payload));
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            result.putAll(delegate.getAll(missing));
+        }
+        return result;
+    }
+
+    /**
+     * @return 总是 true，写入失败时放回待写队列重新写入
+     */
+    @Override
+    public boolean put(String key, EntryHeader header, byte[] payload) {
+        enqueue(key, new Pending(header, payload));
+        return true;
+    }
+
+    /**
+     * @return 总是 true，写入失败时放回待写队列重新写入
+     */
+    @Override
+    public boolean putAll(Map<String, CacheEntry> entries) {
+        Map<String, Pending> values = new LinkedHashMap<>();
+        for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+            values.put(entry.getKey(), new Pending(entry.getValue().header, entry.getValue().payload));
+        }
+        enqueue(values);
+        return true;
+    }
+
+    @Override
+    public InputStream openInputStream(String key) {
+        synchronized (this) {
+            Pending value = pending.get(key);
+            if (value == null) {
+                value = flushing.get(key);
+            }
+            if (value != null) {
+                if (value.payload == null || value.header.isExpired()) {
+                    return null;
+                }
+                byte[] payload = Codecs.decode(value.header, value.payload);
+                return payload == null ? null : new ByteArrayInputStream(payload);
+            }
+        }
+        return delegate.openInputStream(key);
+    }
+
+    @Override
+    public ByteBuffer map(String key) {
+        synchronized (this) {
+            Pending value = pending.get(key);
+            if (value == null) {
+                value = flushing.get(key);
+            }
+            if (value != null) {
+                if (value.payload == null || value.header.isExpired()) {
+                    return null;
+                }
+                byte[] payload = Codecs.decode(value.header, value.payload);
+                return payload == null ? null : ByteBuffer.wrap(payload).asReadOnlyBuffer();
+            }
+        }
+        return delegate.map(key);
+    }
+
+    /**
+     * 内容先写入内存，关闭时和普通写入一样放进待写队列
+     */
+    @Override
+    public CacheOutputStream openOutputStream(String key, int ttl) {
+        return CacheOutputStream.buffered(this, key, ttl);
+    }
+
+    /**
+     * @return 移除之前 key 是否存在（待写队列中或已落盘）
+     */
+    @Override
+    public boolean remove(String key) {
+        boolean existed = contains(key);
+        enqueue(key, new Pending(null, null));
+        return existed;
+    }
+
+    /**
+     * @return 移除之前存在的条目数
+     */
+    @Override
+    public int removeAll(Collection<String> keys) {
+        Map<String, Pending> values = new LinkedHashMap<>();
+        int existed = 0;
+        for (String key : keys) {
+            if (values.put(key, new Pending(null, null)) == null && contains(key)) {
+                existed++;
+            }
+        }
+        enqueue(values);
+        return existed;
+    }
+
+    /**
+     * 待写队列中的变化优先，没有变化时查被包装的存储引擎
+     */
+    @Override
+    public boolean contains(String key) {
+        synchronized (this) {
+            Pending value = pending.get(key);
+            if (value == null) {
+                value = flushing.get(key);
+            }
+            if (value != null) {
+                return value.payload != null;
+            }
+        }
+        return delegate.contains(key);
+    }
+
+    /**
+     * 已落盘的 key 加上待写队列中的变化
+     */
+    @Override
+    public List<String> keys() {
+        LinkedHashSet<String> keys = new LinkedHashSet<>(delegate.keys());
+        synchronized (this) {
+            apply(keys, flushing);
+            apply(keys, pending);
+        }
+        return new ArrayList<>(keys);
+    }
+
+    private static void apply(Set<String> keys, Map<String, Pending> changes) {
+        for (Map.Entry<String, Pending> entry : changes.entrySet()) {
+            if (entry.getValue().payload == null) {
+                keys.remove(entry.getKey());
+            } else {
+                keys.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 在写入线程上执行，不会和正在写入的一批数据交错
+     */
+    @Override
+    public long removeExpired(final int maxCount) {
+        try {
+            return writer.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return delegate.removeExpired(maxCount);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            pending.clear();
+            pendingBytes = 0;
+            generation++;
+        }
+        // 在写入线程上执行，保证不会被之前提交的一批数据覆盖；超时后仍会在写入线程上完成
+        await(writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                delegate.clear();
+            }
+        }), CLEAR_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public File file(String key) {
+        return delegate.file(key);
+    }
+
+    @Override
+    public long size() {
+        return delegate.size();
+    }
+
+    @Override
+    public int count() {
+        return delegate.count();
+    }
+
+    /**
+     * 立即在后台写入所有待写数据
+     *
+     * @return 写入完成的 Future，结果为是否写入成功
+     */
+    public Future<Boolean> flush() {
+        return writer.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return flushPending();
+            }
+        });
+    }
+
+    /**
+     * 写入所有待写数据并等待完成，用于退出前落盘
+     *
+     * @return 是否在超时之前写入成功，写入失败的数据已放回待写队列
+     */
+    public boolean awaitFlushed(long timeout, TimeUnit unit) {
+        Future<Boolean> future = flush();
+        return await(future, timeout, unit) && getQuietly(future);
+    }
+
+    private static boolean getQuietly(Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private void enqueue(String key, Pending value) {
+        enqueue(Collections.singletonMap(key, value));
+    }
+
+    private void enqueue(Map<String, Pending> values) {
+        boolean flushNow;
+        synchronized (this) {
+            for (Map.Entry<String, Pending> entry : values.entrySet()) {
+                Pending value = entry.getValue();
+                Pending old = pending.put(entry.getKey(), value);
+                if (old != null && old.payload != null) {
+                    pendingBytes -= old.payload.length;
+                }
+                if (value.payload != null) {
+                    pendingBytes += value.payload.length;
+                }
+            }
+            flushNow = pendingBytes >= maxPendingBytes;
+            if (!flushNow && !scheduled) {
+                scheduled = true;
+                writer.schedule(flushTask, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            writer.execute(flushTask);
+        }
+    }
+
+    /**
+     * 把写入失败的一批数据放回待写队列，之后写入的同一个 key 以新数据为准，稍后重新写入
+     */
+    private void retry(Map<String, Pending> batch) {
+        LinkedHashMap<String, Pending> merged = new LinkedHashMap<>(batch);
+        merged.putAll(pending);
+        pending = merged;
+        pendingBytes = 0;
+        for (Pending value : merged.values()) {
+            if (value.payload != null) {
+                pendingBytes += value.payload.length;
+            }
+        }
+        if (!scheduled) {
+            scheduled = true;
+            writer.schedule(flushTask, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static boolean await(Future<?> future, long timeout, TimeUnit unit) {
+        try {
+            future.get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    private static class Pending {
+        final EntryHeader header;
+        final byte[] payload;
+
+        Pending(EntryHeader header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pn.android.sdk.utils.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时分布
+ * <p>按微秒数的 2 的幂分桶，第 i 个桶记录 [2^(i-1), 2^i) 微秒的次数，最后一个桶记录更长的耗时。
+ * 分位数取所在桶的上界，误差不超过一倍。</p>
+ * <p>和 {@link StripedCounter} 一样按线程分段记录：每段有自己的一组桶、次数和总耗时，
+ * 段之间按缓存行对齐，读取时求和。</p>
+ */
+public final class LatencyHistogram {
+
+    // 最后一个桶的下界约为 33 秒
+    public static final int BUCKET_COUNT = 26;
+
+    // 每段中桶之后依次是次数和总耗时
+    private static final int COUNT = BUCKET_COUNT;
+    private static final int TOTAL_NANOS = BUCKET_COUNT + 1;
+    // 每段的长度，补齐到整数个缓存行
+    private static final int STRIDE = (TOTAL_NANOS + StripedCounter.PADDING)
+            / StripedCounter.PADDING * StripedCounter.PADDING;
+
+    private final AtomicLongArray cells = new AtomicLongArray(StripedCounter.STRIPES * STRIDE);
+
+    /**
+     * 记录一次耗时
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        int base = StripedCounter.stripe() * STRIDE;
+        cells.getAndIncrement(base + Math.min(bucket, BUCKET_COUNT - 1));
+        cells.getAndIncrement(base + COUNT);
+        cells.getAndAdd(base + TOTAL_NANOS, nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long totalNanos = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            int base = stripe * STRIDE;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += cells.get(base + i);
+            }
+            count += cells.get(base + COUNT);
+            totalNanos += cells.get(base + TOTAL_NANOS);
+        }
+        return new Snapshot(count, totalNanos, counts);
+    }
+
+    /**
+     * 某一时刻的耗时分布
+     */
+    public static final class Snapshot {
+        public final long count;
+        public final long totalNanos;
+        private final long[] buckets;
+
+        Snapshot(long count, long totalNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.buckets = buckets;
+        }
+
+        /**
+         * @return 平均耗时（微秒），没有记录时返回 0
+         */
+        public long meanMicros() {
+            return count == 0 ? 0 : totalNanos / count / 1000;
+        }
+
+        /**
+         * @param percent 0-100
+         * @return 该分位数所在桶的上界（微秒），没有记录时返回 0
+         */
+        public long percentileMicros(double percent) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percent / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(target, 1)) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (buckets.length - 1);
+        }
+
+        /**
+         * @return 第 i 个桶的次数
+         */
+        public long bucket(int i) {
+            return buckets[i];
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count +
+                    ", mean=" + meanMicros() + "us" +
+                    ", p50=" + percentileMicros(50) + "us" +
+                    ", p99=" + percentileMicros(99) + "us" +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.pn.android.sdk.utils.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器
+ * <p>按线程分散到多个槽中累加，读取时求和，多线程频繁累加时不会争用同一个变量。
+ * 每个槽占一个缓存行，避免伪共享。</p>
+ */
+public final class StripedCounter {
+
+    static final int STRIPES = stripes();
+    // 一个 64 字节的缓存行可以放 8 个 long
+    static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long x) {
+        cells.getAndAdd(index(), x);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int index() {
+        return stripe() * PADDING;
+    }
+
+    /**
+     * @return 当前线程使用的槽，0 到 {@link #STRIPES} - 1
+     */
+    static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) & (STRIPES - 1);
+    }
+
+    /**
+     * @return 不小于 CPU 核数的 2 的幂
+     */
+    private static int stripes() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors()) {
+            n <<= 1;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,237 @@
+package com.pn.android.sdk.network;
+
+import com.pn.android.sdk.network.callback.StringCallback;
+import com.pn.android.sdk.network.request.RequestCall;
+import com.pn.android.sdk.network.resilience.ResilienceInterceptor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpUtilTest {
+
+    private final MockWebServer server = new MockWebServer();
+    // 放行之前服务端不返回响应，请求保持在执行中
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpUtil http;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody("body");
+            }
+        });
+        server.start();
+        // 对冲延迟足够长，只标记对冲编号，不发出副本
+        http = new HttpUtil.Builder()
+                .resilience(new ResilienceInterceptor.Builder().hedgeDelay(60000).build())
+                .build();
+        http.setCoalescing(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        http.cancelAll();
+        http.setCoalescing(false);
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void identicalRequestsShareOneResponse() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RequestCall a = get("a");
+        RequestCall b = get("b");
+        a.execute(first);
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        b.execute(second);
+        // 每个请求的对冲编号不同，仍然合并
+        assertNotEquals(hedgeId(a), hedgeId(b));
+        release.countDown();
+
+        assertEquals("body", first.await());
+        assertEquals("body", second.await());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void finishedFlightForgetsHedgedRequests() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RequestCall a = get("a");
+        RequestCall b = get("b");
+        a.execute(first);
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        b.execute(second);
+        release.countDown();
+        first.await();
+        second.await();
+
+        // 请求结束后对冲副本不再记在原请求的 tag 下，取消该 tag 不影响它
+        long deadline = System.currentTimeMillis() + 1000;
+        while (true) {
+            Call copy = http.newHedgeCall(hedgeId(b), b.getRequest());
+            http.cancelTag(b.getHttpRequest().getTag());
+            if (!copy.isCanceled()) {
+                break;
+            }
+            assertTrue("hedged request still tracked", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void cancelingOneWaiterKeepsTheOthers() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RequestCall a = get("a");
+        a.execute(first);
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        get("b").execute(second);
+
+        a.cancel();
+        release.countDown();
+        assertNull(first.await());
+        assertNotNull(first.error);
+        assertEquals("body", second.await());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void cancelingAllWaitersCancelsTheFlight() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RequestCall a = get("a");
+        RequestCall b = get("b");
+        a.execute(first);
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        b.execute(second);
+
+        a.cancel();
+        assertFalse(first.done.await(100, TimeUnit.MILLISECONDS));
+        b.cancel();
+        // 服务端没有响应，实际发出的请求被取消后两个请求都失败
+        assertNull(first.await());
+        assertNull(second.await());
+        assertNotNull(first.error);
+        assertNotNull(second.error);
+    }
+
+    @Test
+    public void cancelTagCancelsOnlyThatTag() throws Exception {
+        RecordingCallback canceled = new RecordingCallback();
+        RecordingCallback kept = new RecordingCallback();
+        get("a", "/a").execute(canceled);
+        get("b", "/b").execute(kept);
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+
+        http.cancelTag("a");
+        assertNull(canceled.await());
+        assertNotNull(canceled.error);
+        release.countDown();
+        assertEquals("body", kept.await());
+    }
+
+    @Test
+    public void cancelGroupCancelsEveryTagInIt() throws Exception {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RecordingCallback other = new RecordingCallback();
+        HttpUtil.get().url(server.url("/1").toString()).tag("a").group("page").build().execute(first);
+        HttpUtil.get().url(server.url("/2").toString()).tag("b").group("page").build().execute(second);
+        get("c", "/3").execute(other);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        }
+
+        http.cancelGroup("page");
+        assertNull(first.await());
+        assertNull(second.await());
+        release.countDown();
+        assertEquals("body", other.await());
+    }
+
+    @Test
+    public void cancelTagFindsCallsMadeDirectlyOnTheClient() throws Exception {
+        Call call = http.getOkHttpClient().newCall(new Request.Builder()
+                .url(server.url("/direct"))
+                .tag("direct")
+                .build());
+        final CountDownLatch failed = new CountDownLatch(1);
+        call.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                failed.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+
+        http.cancelTag("direct");
+        assertTrue(call.isCanceled());
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+    }
+
+    private RequestCall get(String tag) {
+        return get(tag, "/same");
+    }
+
+    private RequestCall get(String tag, String path) {
+        return HttpUtil.get().url(server.url(path).toString()).tag(tag).build().hedged(true);
+    }
+
+    private static String hedgeId(RequestCall call) {
+        return call.getRequest().header(ResilienceInterceptor.HEADER_HEDGE);
+    }
+
+    private static class RecordingCallback extends StringCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String body;
+        volatile Exception error;
+
+        @Override
+        public void onError(Call call, Exception e, int id) {
+            error = e;
+            done.countDown();
+        }
+
+        @Override
+        public void onSuccess(String response, int id) {
+            body = response;
+            done.countDown();
+        }
+
+        String await() throws InterruptedException {
+            assertTrue("no callback", done.await(5, TimeUnit.SECONDS));
+            return body;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.pn.android.sdk.network.cache;
+
+import com.pn.android.sdk.network.HttpUtil;
+import com.pn.android.sdk.network.request.RequestCall;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CacheInterceptorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void networkElseCacheUsesStaleResponseWhenNetworkFails() throws Exception {
+        HttpUrl url = cacheThenGoOffline(false);
+
+        Response response = get(url).cachePolicy(CachePolicy.NETWORK_ELSE_CACHE).execute();
+        assertEquals("cached", response.body().string());
+    }
+
+    @Test
+    public void defaultPolicyDoesNotFallBack() throws Exception {
+        HttpUrl url = cacheThenGoOffline(false);
+
+        try {
+            get(url).execute();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void fallbackToCacheAppliesToAllGets() throws Exception {
+        HttpUrl url = cacheThenGoOffline(true);
+
+        assertEquals("cached", get(url).execute().body().string());
+    }
+
+    @Test
+    public void networkErrorIsRethrownWithoutCachedResponse() throws Exception {
+        HttpUrl url = cacheThenGoOffline(false);
+
+        try {
+            get(url.resolve("/missing")).cachePolicy(CachePolicy.NETWORK_ELSE_CACHE).execute();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * 缓存一个已过期的响应后关闭服务端
+     *
+     * @return 已缓存的地址
+     */
+    private HttpUrl cacheThenGoOffline(boolean fallbackToCache) throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "max-age=0")
+                .setBody("cached"));
+        server.start();
+        HttpUrl url = server.url("/data");
+        try {
+            new HttpUtil.Builder()
+                    .cache(folder.newFolder(), 1 << 20)
+                    .fallbackToCache(fallbackToCache)
+                    .build();
+            Response response = get(url).cachePolicy(CachePolicy.NETWORK_ELSE_CACHE).execute();
+            assertEquals("cached", response.body().string());
+            // 标记只在客户端使用
+            assertNull(server.takeRequest().getHeader(CachePolicy.HEADER_FALLBACK));
+        } finally {
+            server.shutdown();
+        }
+        return url;
+    }
+
+    private static RequestCall get(HttpUrl url) {
+        return HttpUtil.get().url(url.toString()).build();
+    }
+}
@@ -0,0 +1,203 @@
+package com.pn.android.sdk.network.callback;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GenericsCallbackTest {
+
+    @Test
+    public void streamingSerializatorGetsTheFullGenericType() throws Exception {
+        IntSerializator serializator = new IntSerializator();
+        GenericsCallback<List<Integer>> callback = new GenericsCallback<List<Integer>>(serializator) {
+            @Override
+            public void onError(Call call, Exception e, int id) {
+            }
+
+            @Override
+            public void onSuccess(List<Integer> response, int id) {
+            }
+        };
+
+        assertEquals(Arrays.asList(1, 2, 3), callback.parseResponse(response("[1,2,3]"), 0));
+        ParameterizedType type = (ParameterizedType) serializator.type;
+        assertEquals(List.class, type.getRawType());
+        assertEquals(Integer.class, type.getActualTypeArguments()[0]);
+        assertNull(serializator.string);
+    }
+
+    @Test
+    public void plainSerializatorGetsTheBodyAsString() throws Exception {
+        final List<Object> received = new ArrayList<>();
+        IGenericsSerializator serializator = new IGenericsSerializator() {
+            @Override
+            public <T> T transform(String response, Class<T> classOfT) {
+                received.add(response);
+                received.add(classOfT);
+                return classOfT.cast(Integer.valueOf(response));
+            }
+        };
+        GenericsCallback<Integer> callback = new IntegerCallback(serializator);
+
+        assertEquals(Integer.valueOf(42), callback.parseResponse(response("42"), 0));
+        assertEquals(Arrays.<Object>asList("42", Integer.class), received);
+    }
+
+    @Test
+    public void stringTypeSkipsTheSerializator() throws Exception {
+        IntSerializator serializator = new IntSerializator();
+        GenericsCallback<String> callback = new GenericsCallback<String>(serializator) {
+            @Override
+            public void onError(Call call, Exception e, int id) {
+            }
+
+            @Override
+            public void onSuccess(String response, int id) {
+            }
+        };
+
+        assertEquals("raw", callback.parseResponse(response("raw"), 0));
+        assertNull(serializator.type);
+    }
+
+    @Test
+    public void typeArgumentIsFoundThroughSubclasses() {
+        assertEquals(Integer.class, GenericsCallback.typeArgument(SubIntegerCallback.class, GenericsCallback.class));
+        // 第二次从缓存中读取
+        assertEquals(Integer.class, GenericsCallback.typeArgument(SubIntegerCallback.class, GenericsCallback.class));
+    }
+
+    @Test
+    public void listCallbackDeliversItemsWhileDownloading() throws Exception {
+        MockWebServer server = new MockWebServer();
+        // 每 100 毫秒只发出 2 个字节
+        server.enqueue(new MockResponse().setBody("[1,2,3,4]").throttleBody(2, 100, TimeUnit.MILLISECONDS));
+        server.start();
+        try {
+            final List<Long> itemTimes = new ArrayList<>();
+            final List<Integer> indexes = new ArrayList<>();
+            ListCallback<Integer> callback = new ListCallback<Integer>(new IntSerializator()) {
+                @Override
+                public void onItem(Integer item, int index, int id) {
+                    itemTimes.add(System.nanoTime());
+                    indexes.add(index);
+                    assertEquals(7, id);
+                }
+
+                @Override
+                public void onError(Call call, Exception e, int id) {
+                }
+
+                @Override
+                public void onSuccess(List<Integer> response, int id) {
+                }
+            };
+            Response response = new OkHttpClient().newCall(new Request.Builder()
+                    .url(server.url("/items"))
+                    .build()).execute();
+
+            assertEquals(Arrays.asList(1, 2, 3, 4), callback.parseResponse(response, 7));
+            assertEquals(Arrays.asList(0, 1, 2, 3), indexes);
+            // 第一个元素在响应下载完之前就已回调
+            long spread = itemTimes.get(3) - itemTimes.get(0);
+            assertTrue(spread > TimeUnit.MILLISECONDS.toNanos(200));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Response response(String body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://example.com/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                .build();
+    }
+
+    private static class IntegerCallback extends GenericsCallback<Integer> {
+        IntegerCallback(IGenericsSerializator serializator) {
+            super(serializator);
+        }
+
+        @Override
+        public void onError(Call call, Exception e, int id) {
+        }
+
+        @Override
+        public void onSuccess(Integer response, int id) {
+        }
+    }
+
+    private static class SubIntegerCallback extends IntegerCallback {
+        SubIntegerCallback() {
+            super(null);
+        }
+    }
+
+    /**
+     * 解析整数数组，例如 [1,2,3]，逐个字符读取
+     */
+    private static class IntSerializator implements IStreamingSerializator {
+        volatile Type type;
+        volatile String string;
+
+        @Override
+        public <T> T transform(String response, Class<T> classOfT) {
+            string = response;
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T transform(Reader reader, Type typeOfT) throws IOException {
+            type = typeOfT;
+            final List<Integer> items = new ArrayList<>();
+            transformArray(reader, Integer.class, new ItemListener<Integer>() {
+                @Override
+                public void onItem(Integer item, int index) {
+                    items.add(item);
+                }
+            });
+            return (T) items;
+        }
+
+        @Override
+        public <T> void transformArray(Reader reader, Class<T> classOfItem, ItemListener<T> listener)
+                throws IOException {
+            StringBuilder number = new StringBuilder();
+            int index = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (Character.isDigit(c)) {
+                    number.append((char) c);
+                } else if ((c == ',' || c == ']') && number.length() > 0) {
+                    listener.onItem(classOfItem.cast(Integer.valueOf(number.toString())), index++);
+                    number.setLength(0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.pn.android.sdk.network.callback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressReporterTest {
+
+    @Test
+    public void throttledUpdatesStillDeliverFinalEvent() throws Exception {
+        RecordingCallback callback = new RecordingCallback(60000, 0.01f);
+        ProgressReporter reporter = new ProgressReporter(callback, 1);
+        for (int i = 1; i <= 1000; i++) {
+            reporter.update(i, 1000);
+        }
+        reporter.finish();
+
+        assertTrue(callback.last.await(2, TimeUnit.SECONDS));
+        // 第一次和最后一次之间都在间隔之内，排队中的进度被合并
+        assertTrue(callback.events().size() <= 2);
+        assertEquals(1.0f, callback.lastEvent()[0], 0);
+        assertEquals(1000f, callback.lastEvent()[1], 0);
+    }
+
+    @Test
+    public void unknownLengthIsThrottledByInterval() throws Exception {
+        RecordingCallback callback = new RecordingCallback(0, 0.01f);
+        ProgressReporter reporter = new ProgressReporter(callback, 1);
+        for (int i = 1; i <= 5; i++) {
+            reporter.update(i * 100, -1);
+            callback.await(i, 2000);
+        }
+        reporter.finish();
+
+        assertTrue(callback.last.await(2, TimeUnit.SECONDS));
+        // 总字节数未知时进度增量始终为 0，不能因此挡住所有中间进度
+        assertEquals(6, callback.events().size());
+        // 结束时以已传输的字节数作为总数
+        assertEquals(1.0f, callback.lastEvent()[0], 0);
+        assertEquals(500f, callback.lastEvent()[1], 0);
+    }
+
+    @Test
+    public void stepLimitsUpdatesWithKnownLength() throws Exception {
+        RecordingCallback callback = new RecordingCallback(0, 0.5f);
+        ProgressReporter reporter = new ProgressReporter(callback, 1);
+        for (int i = 1; i < 20; i++) {
+            int delivered = callback.events().size();
+            reporter.update(i, 20);
+            // 给每次可能的回调留出执行的时间，避免被合并
+            callback.await(delivered + 1, 20);
+        }
+        reporter.finish();
+
+        assertTrue(callback.last.await(2, TimeUnit.SECONDS));
+        // 5%、55% 和结束时的 95%
+        assertEquals(3, callback.events().size());
+    }
+
+    private static class RecordingCallback extends Callback<Object> {
+        private final long interval;
+        private final float step;
+        private final List<float[]> events = Collections.synchronizedList(new ArrayList<float[]>());
+        final CountDownLatch last = new CountDownLatch(1);
+
+        RecordingCallback(long interval, float step) {
+            this.interval = interval;
+            this.step = step;
+        }
+
+        @Override
+        public void onProgress(float progress, long total, int id) {
+            events.add(new float[]{progress, total});
+            if (total > 0 && progress * total >= total - 1) {
+                last.countDown();
+            }
+        }
+
+        @Override
+        public long progressInterval() {
+            return interval;
+        }
+
+        @Override
+        public float progressStep() {
+            return step;
+        }
+
+        List<float[]> events() {
+            return new ArrayList<>(events);
+        }
+
+        float[] lastEvent() {
+            return events.get(events.size() - 1);
+        }
+
+        /**
+         * 等待回调次数达到 count 或超时，进度在其他线程中回调
+         */
+        void await(int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (events.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+
+        @Override
+        public Object parseResponse(Response response, int id) {
+            return null;
+        }
+
+        @Override
+        public void onError(Call call, Exception e, int id) {
+        }
+
+        @Override
+        public void onSuccess(Object response, int id) {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.pn.android.sdk.network.metrics;
+
+import com.pn.android.sdk.network.HttpUtil;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkMetricsTest {
+
+    @Test
+    public void endpointReplacesSegmentsWithDigits() {
+        assertEquals("GET api.example.com/users/{id}/profile",
+                endpoint(get("https://api.example.com/users/123/profile?x=1")));
+        assertEquals("GET api.example.com/{id}/items/{id}",
+                endpoint(get("https://api.example.com/v2/items/a1b2")));
+        assertEquals("GET api.example.com/",
+                endpoint(get("https://api.example.com/")));
+    }
+
+    @Test
+    public void endpointIncludesMethodAndHost() {
+        Request post = new Request.Builder()
+                .url("http://cdn.example.com:8080/upload")
+                .post(RequestBody.create(MediaType.parse("text/plain"), "x"))
+                .build();
+        assertEquals("POST cdn.example.com/upload", endpoint(post));
+    }
+
+    @Test
+    public void connectLatencyExcludesTimeBeforeTheAttempt() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.start();
+        try {
+            NetworkMetrics metrics = new NetworkMetrics();
+            new HttpUtil.Builder()
+                    .metrics(metrics)
+                    .addInterceptor(new Interceptor() {
+                        @Override
+                        public Response intercept(Chain chain) throws IOException {
+                            // 相当于缓存查找或重试等待的耗时
+                            try {
+                                Thread.sleep(300);
+                            } catch (InterruptedException e) {
+                                throw new IOException(e);
+                            }
+                            return chain.proceed(chain.request());
+                        }
+                    })
+                    .build();
+
+            Response response = HttpUtil.get().url(server.url("/ping").toString()).build().execute();
+            assertEquals("ok", response.body().string());
+
+            List<EndpointStats.Snapshot> snapshots = metrics.snapshot();
+            assertEquals(1, snapshots.size());
+            EndpointStats.Snapshot stats = snapshots.get(0);
+            assertEquals(1, stats.connectLatency.count);
+            assertTrue(stats.connectLatency.totalNanos < TimeUnit.MILLISECONDS.toNanos(300));
+            assertTrue(stats.totalLatency.totalNanos >= TimeUnit.MILLISECONDS.toNanos(300));
+            // 内部的标记不发给服务端
+            RecordedRequest recorded = server.takeRequest();
+            assertNull(recorded.getHeader("PN-Trace"));
+            assertNull(recorded.getHeader("PN-Trace-Attempt"));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Request get(String url) {
+        return new Request.Builder().url(url).build();
+    }
+
+    private static String endpoint(Request request) {
+        return NetworkMetrics.endpoint(request);
+    }
+}
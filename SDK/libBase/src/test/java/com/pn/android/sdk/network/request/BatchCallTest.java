@@ -0,0 +1,137 @@
+package com.pn.android.sdk.network.request;
+
+import com.pn.android.sdk.network.HttpUtil;
+import com.pn.android.sdk.network.callback.BatchCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchCallTest {
+
+    private final MockWebServer server = new MockWebServer();
+    // 放行之前 /slow 不返回响应
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().startsWith("/slow")) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return new MockResponse().setBody(request.getPath());
+            }
+        });
+        server.start();
+        new HttpUtil.Builder().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void resultsFollowTheOrderOfAdding() throws Exception {
+        RecordingBatchCallback callback = new RecordingBatchCallback();
+        HttpUtil.batch()
+                .add(get("/a"))
+                .add(get("/b"))
+                .add(get("/c"))
+                .execute(callback);
+
+        List<BatchCallback.Result> results = callback.await();
+        assertEquals(3, results.size());
+        assertEquals("/a", results.get(0).response);
+        assertEquals("/b", results.get(1).response);
+        assertEquals("/c", results.get(2).response);
+    }
+
+    @Test
+    public void timeoutFailsOnlyUnfinishedRequests() throws Exception {
+        RecordingBatchCallback callback = new RecordingBatchCallback();
+        RequestCall slow = get("/slow");
+        HttpUtil.batch()
+                .add(get("/fast"))
+                .add(slow)
+                .timeout(1000)
+                .execute(callback);
+
+        List<BatchCallback.Result> results = callback.await();
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals("/fast", results.get(0).response);
+        assertTrue(results.get(1).error instanceof InterruptedIOException);
+        assertTrue(slow.getCall().isCanceled());
+        // 被取消的请求结束后不再回调
+        release.countDown();
+        assertFalse(callback.again.await(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelFailsUnfinishedRequests() throws Exception {
+        RecordingBatchCallback callback = new RecordingBatchCallback();
+        BatchCall batch = HttpUtil.batch()
+                .add(get("/slow/1"))
+                .add(get("/slow/2"));
+        batch.execute(callback);
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+        assertNotNull(server.takeRequest(1, TimeUnit.SECONDS));
+
+        batch.cancel();
+        List<BatchCallback.Result> results = callback.await();
+        assertFalse(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void executesOnlyOnce() {
+        BatchCall batch = HttpUtil.batch();
+        batch.execute(null);
+        batch.execute(null);
+    }
+
+    private RequestCall get(String path) {
+        return HttpUtil.get().url(server.url(path).toString()).build();
+    }
+
+    private static class RecordingBatchCallback extends BatchCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        final CountDownLatch again = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        volatile List<Result> results;
+
+        @Override
+        public void onComplete(List<Result> results) {
+            if (calls.incrementAndGet() > 1) {
+                again.countDown();
+                return;
+            }
+            this.results = results;
+            done.countDown();
+        }
+
+        List<Result> await() throws InterruptedException {
+            assertTrue("no callback", done.await(5, TimeUnit.SECONDS));
+            return results;
+        }
+    }
+}
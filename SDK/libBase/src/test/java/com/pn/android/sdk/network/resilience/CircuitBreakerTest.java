@@ -0,0 +1,67 @@
+package com.pn.android.sdk.network.resilience;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+        breaker.onFailure();
+        breaker.onFailure();
+        // 成功后重新计数
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.CLOSED, breaker.state());
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpenAllowsOneProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.OPEN, breaker.state());
+        Thread.sleep(80);
+
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.state());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.CLOSED, breaker.state());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(5, 50);
+        for (int i = 0; i < 5; i++) {
+            breaker.onFailure();
+        }
+        Thread.sleep(80);
+        assertTrue(breaker.allowRequest());
+        // 试探请求失败一次就重新断开
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void ignoredProbeReleasesSlot() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        breaker.onFailure();
+        Thread.sleep(80);
+        assertTrue(breaker.allowRequest());
+        breaker.onIgnored();
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.state());
+        assertTrue(breaker.allowRequest());
+    }
+}
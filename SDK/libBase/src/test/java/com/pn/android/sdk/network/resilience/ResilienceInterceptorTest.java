@@ -0,0 +1,187 @@
+package com.pn.android.sdk.network.resilience;
+
+import com.pn.android.sdk.network.HttpUtil;
+import com.pn.android.sdk.network.request.RequestCall;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilienceInterceptorTest {
+
+    private final MockWebServer server = new MockWebServer();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ResilienceInterceptor resilience;
+    private HttpUtil http;
+
+    @After
+    public void tearDown() throws Exception {
+        http.cancelAll();
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void retriesRetryableStatus() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("ok"));
+        start(new ResilienceInterceptor.Builder().retry(2, 10, 50).hedgeDelay(0));
+
+        Response response = get("/").execute();
+        assertEquals("ok", response.body().string());
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, resilience.retryCount());
+        // 内部的标记不发给服务端
+        RecordedRequest recorded = server.takeRequest();
+        assertNull(recorded.getHeader(ResilienceInterceptor.HEADER_CALL));
+        assertNull(recorded.getHeader(ResilienceInterceptor.HEADER_HEDGE));
+    }
+
+    @Test
+    public void stopsAfterMaxRetries() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+        start(new ResilienceInterceptor.Builder().retry(1, 10, 50).hedgeDelay(0));
+
+        assertEquals(503, get("/").execute().code());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void doesNotRetryPost() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+        start(new ResilienceInterceptor.Builder().retry(2, 10, 50).hedgeDelay(0));
+
+        Response response = http.getOkHttpClient().newCall(new Request.Builder()
+                .url(server.url("/"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "body"))
+                .build()).execute();
+        assertEquals(503, response.code());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void waitsForRetryAfter() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        start(new ResilienceInterceptor.Builder().retry(1, 10, 5000).hedgeDelay(0));
+
+        long start = System.nanoTime();
+        assertEquals("ok", get("/").execute().body().string());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1000);
+    }
+
+    @Test
+    public void canceledCallIsNotRetried() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody("late");
+            }
+        });
+        start(new ResilienceInterceptor.Builder().retry(2, 10, 50).hedgeDelay(0));
+
+        final RequestCall call = get("/");
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    server.takeRequest();
+                    call.cancel();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.start();
+        try {
+            call.execute();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, resilience.retryCount());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void hedgeCopyWinsWhenPrimaryIsSlow() throws Exception {
+        final AtomicInteger arrivals = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (arrivals.incrementAndGet() == 1) {
+                    release.await(5, TimeUnit.SECONDS);
+                    return new MockResponse().setBody("primary");
+                }
+                return new MockResponse().setBody("hedge");
+            }
+        });
+        start(new ResilienceInterceptor.Builder().retry(0, 10, 50).hedgeDelay(50));
+
+        assertEquals("hedge", get("/").hedged(true).execute().body().string());
+        assertEquals(1, resilience.hedgeCount());
+        assertEquals(1, resilience.hedgeWinCount());
+    }
+
+    @Test
+    public void retryWaitsForBothHedgedAttempts() throws Exception {
+        final AtomicInteger arrivals = new AtomicInteger();
+        final AtomicLong primaryDone = new AtomicLong();
+        final AtomicLong retryArrived = new AtomicLong();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                switch (arrivals.incrementAndGet()) {
+                    case 1:
+                        // 原请求慢，副本先返回需要重试的响应
+                        Thread.sleep(300);
+                        primaryDone.set(System.nanoTime());
+                        return new MockResponse().setResponseCode(503);
+                    case 2:
+                        return new MockResponse().setResponseCode(503);
+                    default:
+                        retryArrived.set(System.nanoTime());
+                        return new MockResponse().setBody("ok");
+                }
+            }
+        });
+        start(new ResilienceInterceptor.Builder().retry(1, 10, 50).hedgeDelay(50));
+
+        assertEquals("ok", get("/").hedged(true).execute().body().string());
+        assertEquals(3, server.getRequestCount());
+        assertTrue(primaryDone.get() != 0);
+        assertTrue("retried while the primary was in flight", retryArrived.get() > primaryDone.get());
+    }
+
+    private void start(ResilienceInterceptor.Builder builder) throws IOException {
+        server.start();
+        resilience = builder.circuitBreaker(0, 0).build();
+        http = new HttpUtil.Builder().resilience(resilience).build();
+    }
+
+    private RequestCall get(String path) {
+        return HttpUtil.get().url(server.url(path).toString()).build();
+    }
+}
@@ -0,0 +1,131 @@
+package com.pn.android.sdk.network.schedule;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private final OkHttpClient client = new OkHttpClient();
+    private final List<String> started = new ArrayList<>();
+    private final List<String> canceled = new ArrayList<>();
+    private final ArrayDeque<RecordingTask> active = new ArrayDeque<>();
+
+    @Test
+    public void higherPriorityStartsFirst() {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        submit(scheduler, "running", "t", Priority.NORMAL);
+        submit(scheduler, "low", "t", Priority.LOW);
+        submit(scheduler, "normal", "t", Priority.NORMAL);
+        submit(scheduler, "high", "t", Priority.HIGH);
+        assertEquals(Arrays.asList("running"), started);
+
+        finishAll(scheduler);
+        assertEquals(Arrays.asList("running", "high", "normal", "low"), started);
+    }
+
+    @Test
+    public void tagsTakeTurnsWithinPriority() {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        submit(scheduler, "running", "x", Priority.NORMAL);
+        submit(scheduler, "a1", "a", Priority.NORMAL);
+        submit(scheduler, "a2", "a", Priority.NORMAL);
+        submit(scheduler, "a3", "a", Priority.NORMAL);
+        submit(scheduler, "b1", "b", Priority.NORMAL);
+        submit(scheduler, "b2", "b", Priority.NORMAL);
+
+        finishAll(scheduler);
+        assertEquals(Arrays.asList("running", "a1", "b1", "a2", "b2", "a3"), started);
+    }
+
+    @Test
+    public void lowPriorityIsCapped() {
+        RequestScheduler scheduler = new RequestScheduler(10);
+        for (int i = 0; i < 4; i++) {
+            submit(scheduler, "low" + i, "t" + i, Priority.LOW);
+        }
+        submit(scheduler, "normal", "n", Priority.NORMAL);
+        assertEquals(Arrays.asList("low0", "low1", "normal"), started);
+        assertEquals(2, scheduler.queuedCount());
+        assertEquals(3, scheduler.runningCount());
+    }
+
+    @Test
+    public void removeTagAndReprioritize() {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        submit(scheduler, "running", "x", Priority.NORMAL);
+        submit(scheduler, "page1", "page", Priority.NORMAL);
+        submit(scheduler, "other", "other", Priority.NORMAL);
+        submit(scheduler, "gone", "gone", Priority.NORMAL);
+        submit(scheduler, "page2", "page", Priority.NORMAL);
+
+        assertEquals(1, scheduler.removeTag("gone"));
+        assertEquals(Arrays.asList("gone"), canceled);
+        // 页面进入后台，排队中的请求降为低优先级
+        assertEquals(2, scheduler.setPriority("page", Priority.LOW));
+
+        finishAll(scheduler);
+        assertEquals(Arrays.asList("running", "other", "page1", "page2"), started);
+    }
+
+    @Test
+    public void canceledWhileQueuedIsSkipped() {
+        RequestScheduler scheduler = new RequestScheduler(1);
+        RecordingTask first = submit(scheduler, "running", "t", Priority.NORMAL);
+        RecordingTask skipped = submit(scheduler, "skipped", "t", Priority.NORMAL);
+        submit(scheduler, "next", "t", Priority.NORMAL);
+        skipped.call.cancel();
+
+        scheduler.finished(first);
+        assertEquals(Arrays.asList("running", "next"), started);
+        assertEquals(Arrays.asList("skipped"), canceled);
+        assertTrue(scheduler.remove(submit(scheduler, "queued", "t", Priority.NORMAL).call));
+    }
+
+    private RecordingTask submit(RequestScheduler scheduler, String name, Object tag, int priority) {
+        Call call = client.newCall(new Request.Builder().url("http://localhost/" + name).tag(tag).build());
+        RecordingTask task = new RecordingTask(call, priority, name);
+        scheduler.submit(task);
+        return task;
+    }
+
+    /**
+     * 依次结束已发出的请求，结束时调度器同步发出下一个，直到没有请求在执行
+     */
+    private void finishAll(RequestScheduler scheduler) {
+        RecordingTask task;
+        while ((task = active.poll()) != null) {
+            scheduler.finished(task);
+        }
+    }
+
+    private class RecordingTask extends RequestScheduler.Task {
+        final String name;
+
+        RecordingTask(Call call, int priority, String name) {
+            super(call, priority);
+            this.name = name;
+        }
+
+        @Override
+        protected void start() {
+            started.add(name);
+            active.add(this);
+        }
+
+        @Override
+        protected void onCanceled() {
+            canceled.add(name);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.pn.android.sdk.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheUtilTest {
+    private static final int KEYS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 清理过期数据的同时重新写入同一批 key，新写入的文件不能被删除
+     */
+    @Test
+    public void sweepKeepsConcurrentPut() throws Exception {
+        final CacheUtil cache = new CacheUtil.Builder(folder.newFolder())
+                .engine(CacheUtil.ENGINE_FILE).build();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < KEYS; i++) {
+                cache.put("k" + i, "old", 1);
+            }
+            Thread.sleep(1100);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread sweeper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    cache.sweepExpired();
+                }
+            });
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < KEYS; i++) {
+                        cache.put("k" + i, "new");
+                    }
+                }
+            });
+            sweeper.start();
+            writer.start();
+            start.countDown();
+            sweeper.join();
+            writer.join();
+
+            for (int i = 0; i < KEYS; i++) {
+                File file = cache.file("k" + i);
+                assertTrue("k" + i + " lost in round " + round, file != null && file.exists());
+            }
+            assertTrue(cache.sweepExpired() == 0);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 普通读取不能把返回旧数据的时间当成新鲜时间放入内存，否则不会再触发后台重新加载
+     */
+    @Test
+    public void plainReadKeepsStaleRefresh() throws Exception {
+        CacheUtil cache = new CacheUtil.Builder(folder.newFolder()).build();
+        final AtomicInteger loads = new AtomicInteger();
+        CacheUtil.Loader<String> loader = new CacheUtil.Loader<String>() {
+            @Override
+            public String load(String key) {
+                return "v" + loads.incrementAndGet();
+            }
+        };
+        assertEquals("v1", cache.getAsString("k", 1, 60, loader));
+        assertEquals("v1", cache.getAsString("k"));
+        Thread.sleep(1100);
+
+        assertEquals("v1", cache.getAsString("k", 1, 60, loader));
+        for (int i = 0; i < 50 && loads.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * 写文件失败时不能把写了一半的文件计入大小，也不能在清单中留下记录
+     */
+    @Test
+    public void failedWriteDropsRecord() throws Exception {
+        File dir = folder.newFolder();
+        CacheUtil cache = new CacheUtil.Builder(dir).engine(CacheUtil.ENGINE_FILE).build();
+        cache.put("ok", "value");
+        cache.put("broken", "old");
+        long size = cache.stats().size;
+        // 目标位置被目录占用，写入失败
+        File file = cache.file("broken");
+        assertTrue(file.delete() && file.mkdirs());
+
+        cache.put("broken", "new");
+        assertEquals(1, cache.stats().count);
+        assertTrue(cache.stats().size < size);
+        assertFalse(file.exists());
+        assertEquals(1, count(cache.keys()));
+
+        CacheUtil reopened = new CacheUtil.Builder(dir).engine(CacheUtil.ENGINE_FILE).build();
+        assertEquals(1, reopened.stats().count);
+        assertEquals("value", reopened.getAsString("ok"));
+    }
+
+    private static int count(Iterator<String> keys) {
+        int count = 0;
+        while (keys.hasNext()) {
+            keys.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void recursiveLoadFails() throws Exception {
+        final CacheUtil cache = new CacheUtil.Builder(folder.newFolder()).build();
+        String value = cache.getAsString("k", 60, new CacheUtil.Loader<String>() {
+            @Override
+            public String load(String key) {
+                return cache.getAsString(key, 60, this);
+            }
+        });
+        assertNull(value);
+    }
+}
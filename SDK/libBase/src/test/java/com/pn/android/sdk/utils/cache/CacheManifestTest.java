@@ -0,0 +1,82 @@
+package com.pn.android.sdk.utils.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CacheManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.newFolder(), "manifest");
+    }
+
+    @Test
+    public void missingManifestLoadsNull() {
+        assertNull(new CacheManifest(file).load());
+    }
+
+    @Test
+    public void reloadRestoresRecordsByLastAccess() {
+        CacheManifest manifest = new CacheManifest(file);
+        manifest.load();
+        manifest.put(new CacheManifest.Record("a", "key-a", 10, 300, 0));
+        manifest.putAll(Arrays.asList(
+                new CacheManifest.Record("b", "key-b", 20, 100, 5000),
+                new CacheManifest.Record("c", null, 30, 200, 0)));
+        manifest.put(new CacheManifest.Record("a", "key-a", 11, 400, 0));
+        manifest.remove("c");
+
+        List<CacheManifest.Record> records = new CacheManifest(file).load();
+        assertEquals(2, records.size());
+        CacheManifest.Record b = records.get(0);
+        assertEquals("b", b.name);
+        assertEquals("key-b", b.key);
+        assertEquals(20, b.size);
+        assertEquals(5000, b.expireAt);
+        CacheManifest.Record a = records.get(1);
+        assertEquals("a", a.name);
+        assertEquals(11, a.size);
+        assertEquals(400, a.lastAccess);
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws Exception {
+        CacheManifest manifest = new CacheManifest(file);
+        manifest.load();
+        manifest.put(new CacheManifest.Record("a", "key-a", 10, 100, 0));
+        // 写了一半的新增记录
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{1, 0, 5, 'b'});
+        out.close();
+
+        CacheManifest reloaded = new CacheManifest(file);
+        assertEquals(1, reloaded.load().size());
+        // 重写之后追加的记录不会接在半条记录后面
+        reloaded.put(new CacheManifest.Record("b", "key-b", 20, 200, 0));
+        assertEquals(2, new CacheManifest(file).load().size());
+    }
+
+    @Test
+    public void corruptedHeaderLoadsNull() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[32]);
+        out.close();
+
+        assertNull(new CacheManifest(file).load());
+    }
+}
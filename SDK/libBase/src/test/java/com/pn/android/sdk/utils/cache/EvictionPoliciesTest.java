@@ -0,0 +1,82 @@
+package com.pn.android.sdk.utils.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EvictionPoliciesTest {
+
+    @Test
+    public void lruEvictsLeastRecentlyUsed() {
+        EvictionPolicy<String> policy = EvictionPolicies.lru();
+        policy.onPut("a", 1, 0);
+        policy.onPut("b", 1, 0);
+        policy.onPut("c", 1, 0);
+        policy.onAccess("a");
+        assertEquals(Arrays.asList("b", "c", "a"), drain(policy));
+    }
+
+    @Test
+    public void lfuEvictsLeastFrequentlyUsed() {
+        EvictionPolicy<String> policy = EvictionPolicies.lfu();
+        policy.onPut("a", 1, 0);
+        policy.onPut("b", 1, 0);
+        policy.onPut("c", 1, 0);
+        policy.onAccess("a");
+        policy.onAccess("a");
+        policy.onAccess("c");
+        // 次数相同时先进入该次数的先淘汰
+        policy.onAccess("b");
+        assertEquals(Arrays.asList("c", "b", "a"), drain(policy));
+    }
+
+    @Test
+    public void sizeEvictsLargestFirst() {
+        EvictionPolicy<String> policy = EvictionPolicies.size();
+        policy.onPut("a", 10, 0);
+        policy.onPut("b", 30, 0);
+        policy.onPut("c", 20, 0);
+        policy.onPut("d", 30, 0);
+        assertEquals(Arrays.asList("b", "d", "c", "a"), drain(policy));
+    }
+
+    @Test
+    public void ttlEvictsEarliestExpiryThenLru() {
+        EvictionPolicy<String> policy = EvictionPolicies.ttl();
+        policy.onPut("p1", 1, 0);
+        policy.onPut("late", 1, 2000);
+        policy.onPut("p2", 1, 0);
+        policy.onPut("early", 1, 1000);
+        policy.onAccess("p1");
+        assertEquals(Arrays.asList("early", "late", "p2", "p1"), drain(policy));
+    }
+
+    @Test
+    public void overwriteAndClear() {
+        EvictionPolicy<String> policy = EvictionPolicies.size();
+        policy.onPut("a", 10, 0);
+        policy.onPut("b", 20, 0);
+        policy.onPut("a", 30, 0);
+        assertEquals("a", policy.victim());
+        policy.clear();
+        assertNull(policy.victim());
+    }
+
+    /**
+     * 依次取出所有条目的淘汰顺序
+     */
+    private static List<String> drain(EvictionPolicy<String> policy) {
+        List<String> order = new ArrayList<>();
+        String victim;
+        while ((victim = policy.victim()) != null) {
+            order.add(victim);
+            policy.onRemove(victim);
+        }
+        return order;
+    }
+}
@@ -0,0 +1,44 @@
+package com.pn.android.sdk.utils.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpiryIndexTest {
+
+    @Test
+    public void expiredInExpiryOrder() {
+        ExpiryIndex<String> index = new ExpiryIndex<>();
+        index.put("c", 300);
+        index.put("a", 100);
+        index.put("never", 0);
+        index.put("b", 200);
+        index.put("d", 400);
+
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("a", "b", "c"), index.expired(300, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("a", "b"), index.expired(1000, 2));
+        assertEquals(Collections.emptyList(), index.expired(99, Integer.MAX_VALUE));
+        assertEquals(100, index.nextExpireAt());
+    }
+
+    @Test
+    public void overwriteAndRemove() {
+        ExpiryIndex<String> index = new ExpiryIndex<>();
+        index.put("a", 100);
+        index.put("b", 200);
+        index.put("a", 300);
+        assertEquals(300, index.expireAt("a"));
+        assertEquals(Arrays.asList("b", "a"), index.expired(1000, Integer.MAX_VALUE));
+
+        // 改为永不过期后不再记录
+        index.put("b", 0);
+        assertEquals(0, index.expireAt("b"));
+        index.remove("a");
+        assertEquals(0, index.size());
+        assertEquals(0, index.nextExpireAt());
+    }
+}
@@ -0,0 +1,134 @@
+package com.pn.android.sdk.utils.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JournalCacheStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder();
+    }
+
+    @Test
+    public void replayRestoresIndex() {
+        JournalCacheStore store = open();
+        put(store, "a", "1");
+        put(store, "b", "2");
+        put(store, "a", "3");
+        store.remove("b");
+
+        JournalCacheStore reopened = open();
+        assertEquals(1, reopened.count());
+        assertEquals("3", value(reopened, "a"));
+        assertNull(reopened.get("b"));
+        assertEquals(store.size(), reopened.size());
+    }
+
+    @Test
+    public void truncatedTailIsDropped() throws Exception {
+        JournalCacheStore store = open();
+        put(store, "a", "1");
+        put(store, "b", "2");
+        File segment = lastSegment();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 1);
+        file.close();
+
+        JournalCacheStore reopened = open();
+        assertEquals("1", value(reopened, "a"));
+        assertNull(reopened.get("b"));
+        // 半条记录被截掉，之后追加的记录可以正常回放
+        put(reopened, "c", "3");
+        JournalCacheStore again = open();
+        assertEquals("1", value(again, "a"));
+        assertEquals("3", value(again, "c"));
+    }
+
+    @Test
+    public void crcMismatchInTailIsDropped() throws Exception {
+        JournalCacheStore store = open();
+        put(store, "a", "1");
+        put(store, "b", "2");
+        File segment = lastSegment();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(file.length() - 1);
+        file.write('x');
+        file.close();
+
+        JournalCacheStore reopened = open();
+        assertEquals("1", value(reopened, "a"));
+        assertNull(reopened.get("b"));
+        assertEquals(1, reopened.count());
+    }
+
+    @Test
+    public void compactionKeepsLiveData() {
+        JournalCacheStore store = open();
+        char[] chars = new char[64 * 1024];
+        for (int i = 0; i < 40; i++) {
+            Arrays.fill(chars, (char) ('a' + i % 26));
+            put(store, "big", new String(chars));
+        }
+        put(store, "small", "s");
+
+        long total = 0;
+        for (File segment : segments()) {
+            total += segment.length();
+        }
+        // 覆盖写入的废弃数据超过一半后被合并掉
+        assertTrue(total < 1024 * 1024);
+        JournalCacheStore reopened = open();
+        assertEquals(2, reopened.count());
+        assertEquals('n', value(reopened, "big").charAt(0));
+        assertEquals("s", value(reopened, "small"));
+    }
+
+    private JournalCacheStore open() {
+        return new JournalCacheStore(dir, 16 << 20, 1000, EvictionPolicies.<String>lru());
+    }
+
+    private File[] segments() {
+        return dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(".seg");
+            }
+        });
+    }
+
+    private File lastSegment() {
+        File last = null;
+        for (File segment : segments()) {
+            if (last == null || segment.getName().compareTo(last.getName()) > 0) {
+                last = segment;
+            }
+        }
+        return last;
+    }
+
+    private static void put(CacheStore store, String key, String value) {
+        WriteBehindStoreTest.put(store, key, value);
+    }
+
+    private static String value(CacheStore store, String key) {
+        CacheEntry entry = store.get(key);
+        return entry == null ? null : new String(entry.payload);
+    }
+}
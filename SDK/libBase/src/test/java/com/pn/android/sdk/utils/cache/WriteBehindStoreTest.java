@@ -0,0 +1,236 @@
+package com.pn.android.sdk.utils.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JournalCacheStore disk;
+    private FailingStore delegate;
+    private WriteBehindStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        disk = new JournalCacheStore(folder.newFolder(), 1 << 20, 1000, EvictionPolicies.<String>lru());
+        delegate = new FailingStore(disk);
+        store = new WriteBehindStore(delegate, 60000, 1 << 20);
+    }
+
+    @Test
+    public void flushWritesLatestValuesInOneBatch() throws Exception {
+        put(store, "a", "1");
+        put(store, "b", "2");
+        put(store, "a", "3");
+        store.remove("b");
+        // 调用方线程不写磁盘
+        assertEquals(0, disk.count());
+
+        assertTrue(store.awaitFlushed(1, TimeUnit.SECONDS));
+        assertEquals(1, delegate.putAllCalls.get());
+        assertEquals(1, disk.count());
+        assertEquals("3", new String(disk.get("a").payload));
+        assertNull(disk.get("b"));
+    }
+
+    @Test
+    public void readsSeePendingChangesBeforeDisk() throws Exception {
+        put(store, "a", "disk");
+        put(store, "b", "disk");
+        assertTrue(store.awaitFlushed(1, TimeUnit.SECONDS));
+
+        put(store, "a", "pending");
+        store.remove("b");
+        put(store, "c", "pending");
+        assertEquals("pending", new String(store.get("a").payload));
+        assertNull(store.get("b"));
+        Map<String, CacheEntry> all = store.getAll(Arrays.asList("a", "b", "c"));
+        assertEquals(2, all.size());
+        assertEquals("pending", new String(all.get("c").payload));
+        assertEquals(2, store.keys().size());
+        // 磁盘上仍是旧数据
+        assertEquals("disk", new String(disk.get("a").payload));
+        assertNotNull(disk.get("b"));
+
+        assertTrue(store.awaitFlushed(1, TimeUnit.SECONDS));
+        assertEquals("pending", new String(disk.get("a").payload));
+        assertNull(disk.get("b"));
+    }
+
+    @Test
+    public void failedFlushIsRetried() throws Exception {
+        delegate.failures.set(1);
+        put(store, "k", "v");
+        // 第一次写入失败，这一批放回待写队列，读取仍能看到
+        assertFalse(store.awaitFlushed(1, TimeUnit.SECONDS));
+        assertNotNull(store.get("k"));
+        assertEquals(0, disk.count());
+
+        assertTrue(store.awaitFlushed(1, TimeUnit.SECONDS));
+        assertEquals(1, disk.count());
+        assertNotNull(disk.get("k"));
+    }
+
+    @Test
+    public void failedJournalWriteIsRetried() throws Exception {
+        File dir = folder.newFolder();
+        JournalCacheStore journal = new JournalCacheStore(dir, 16 << 20, 1000, EvictionPolicies.<String>lru());
+        WriteBehindStore writeBehind = new WriteBehindStore(journal, 60000, 64 << 20);
+        // 占住下一个段文件的位置，写满当前段后无法新建段
+        File blocker = new File(dir, "journal-2.seg");
+        assertTrue(blocker.mkdir());
+        byte[] payload = new byte[1 << 20];
+        for (int i = 0; i < 5; i++) {
+            writeBehind.put("k" + i, EntryHeader.create(payload, EntryHeader.NO_TTL), payload);
+        }
+
+        assertFalse(writeBehind.awaitFlushed(5, TimeUnit.SECONDS));
+        assertTrue(writeBehind.contains("k4"));
+        assertFalse(journal.contains("k4"));
+
+        assertTrue(blocker.delete());
+        assertTrue(writeBehind.awaitFlushed(5, TimeUnit.SECONDS));
+        assertEquals(5, journal.count());
+        assertNotNull(journal.get("k4"));
+    }
+
+    @Test
+    public void removeReportsWhetherKeyExisted() throws Exception {
+        assertFalse(store.remove("missing"));
+
+        put(store, "pending", "v");
+        assertTrue(store.remove("pending"));
+        assertFalse(store.remove("pending"));
+
+        put(store, "flushed", "v");
+        assertTrue(store.awaitFlushed(1, TimeUnit.SECONDS));
+        assertTrue(store.remove("flushed"));
+        assertEquals(0, store.removeAll(Arrays.asList("flushed", "missing")));
+
+        put(store, "a", "v");
+        assertTrue(store.awaitFlushed(1, TimeUnit.SECONDS));
+        assertEquals(1, store.removeAll(Arrays.asList("a", "missing")));
+    }
+
+    static void put(CacheStore store, String key, String value) {
+        byte[] payload = value.getBytes();
+        store.put(key, EntryHeader.create(payload, EntryHeader.NO_TTL), payload);
+    }
+
+    /**
+     * 前几次批量写入失败的存储引擎，记录批量写入的次数
+     */
+    private static class FailingStore implements CacheStore {
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger putAllCalls = new AtomicInteger();
+        private final CacheStore delegate;
+
+        FailingStore(CacheStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CacheEntry get(String key) {
+            return delegate.get(key);
+        }
+
+        @Override
+        public Map<String, CacheEntry> getAll(Collection<String> keys) {
+            return delegate.getAll(keys);
+        }
+
+        @Override
+        public boolean put(String key, EntryHeader header, byte[] payload) {
+            return delegate.put(key, header, payload);
+        }
+
+        @Override
+        public boolean putAll(Map<String, CacheEntry> entries) {
+            putAllCalls.incrementAndGet();
+            if (failures.getAndDecrement() > 0) {
+                return false;
+            }
+            return delegate.putAll(entries);
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return delegate.contains(key);
+        }
+
+        @Override
+        public InputStream openInputStream(String key) {
+            return delegate.openInputStream(key);
+        }
+
+        @Override
+        public ByteBuffer map(String key) {
+            return delegate.map(key);
+        }
+
+        @Override
+        public CacheOutputStream openOutputStream(String key, int ttl) {
+            return delegate.openOutputStream(key, ttl);
+        }
+
+        @Override
+        public boolean remove(String key) {
+            return delegate.remove(key);
+        }
+
+        @Override
+        public int removeAll(Collection<String> keys) {
+            return delegate.removeAll(keys);
+        }
+
+        @Override
+        public List<String> keys() {
+            return delegate.keys();
+        }
+
+        @Override
+        public long removeExpired(int maxCount) {
+            return delegate.removeExpired(maxCount);
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+
+        @Override
+        public File file(String key) {
+            return delegate.file(key);
+        }
+
+        @Override
+        public long size() {
+            return delegate.size();
+        }
+
+        @Override
+        public int count() {
+            return delegate.count();
+        }
+    }
+}